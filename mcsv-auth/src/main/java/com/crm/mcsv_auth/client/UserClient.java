@@ -1,6 +1,8 @@
 package com.crm.mcsv_auth.client;
 
+import com.crm.mcsv_auth.dto.AuthenticateResponse;
 import com.crm.mcsv_auth.dto.CreateUserInternalRequest;
+import com.crm.mcsv_auth.dto.UserAuthoritiesDTO;
 import com.crm.mcsv_auth.dto.UserDTO;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.http.ResponseEntity;
@@ -21,10 +23,18 @@ public interface UserClient {
     ResponseEntity<UserDTO> getUserByEmail(
             @RequestParam("email") String email);
 
+    @GetMapping("/detail/login")
+    ResponseEntity<UserDTO> getUserByUsernameOrEmail(
+            @RequestParam("login") String login);
+
     @GetMapping("/detail/{id}")
     ResponseEntity<UserDTO> getUserById(
             @PathVariable("id") Long id);
 
+    @GetMapping("/detail/{id}/authorities")
+    ResponseEntity<UserAuthoritiesDTO> getUserAuthorities(
+            @PathVariable("id") Long id);
+
     @PostMapping("/sign-up")
     ResponseEntity<UserDTO> signUpUser(@RequestBody CreateUserInternalRequest request);
 
@@ -32,6 +42,11 @@ public interface UserClient {
     ResponseEntity<Boolean> validateCredentials(
             @RequestBody CredentialsRequest credentials);
 
+    // Valida credenciales y devuelve el usuario con roles y permisos en una sola llamada
+    @PostMapping("/authenticate")
+    ResponseEntity<AuthenticateResponse> authenticate(
+            @RequestBody CredentialsRequest credentials);
+
     @PostMapping("/update-password")
     ResponseEntity<Void> updatePassword(@RequestBody UpdatePasswordRequest request);
 
@@ -1,6 +1,8 @@
 package com.crm.mcsv_auth.client;
 
+import com.crm.mcsv_auth.dto.AuthenticateResponse;
 import com.crm.mcsv_auth.dto.CreateUserInternalRequest;
+import com.crm.mcsv_auth.dto.UserAuthoritiesDTO;
 import com.crm.mcsv_auth.dto.UserDTO;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
@@ -20,11 +22,21 @@ public class UserClientFallback implements UserClient {
         throw new UserClientUnavailableException("User service unavailable: cannot get user by email");
     }
 
+    @Override
+    public ResponseEntity<UserDTO> getUserByUsernameOrEmail(String login) {
+        throw new UserClientUnavailableException("User service unavailable: cannot get user by username or email");
+    }
+
     @Override
     public ResponseEntity<UserDTO> getUserById(Long id) {
         throw new UserClientUnavailableException("User service unavailable: cannot get user by id");
     }
 
+    @Override
+    public ResponseEntity<UserAuthoritiesDTO> getUserAuthorities(Long id) {
+        throw new UserClientUnavailableException("User service unavailable: cannot get user authorities");
+    }
+
     @Override
     public ResponseEntity<UserDTO> signUpUser(CreateUserInternalRequest request) {
         throw new UserClientUnavailableException("User service unavailable: cannot sign up user");
@@ -35,6 +47,11 @@ public class UserClientFallback implements UserClient {
         throw new UserClientUnavailableException("User service unavailable: cannot validate credentials");
     }
 
+    @Override
+    public ResponseEntity<AuthenticateResponse> authenticate(CredentialsRequest credentials) {
+        throw new UserClientUnavailableException("User service unavailable: cannot authenticate");
+    }
+
     @Override
     public ResponseEntity<Void> updatePassword(UpdatePasswordRequest request) {
         throw new UserClientUnavailableException("User service unavailable: cannot update password");
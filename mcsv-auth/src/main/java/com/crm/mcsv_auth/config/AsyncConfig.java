@@ -0,0 +1,21 @@
+package com.crm.mcsv_auth.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+
+@Configuration
+public class AsyncConfig {
+
+    // Consultas a otros servicios lanzadas en paralelo dentro de una petición (un hilo virtual por
+    // tarea); el decorador propaga el contexto de trazas/MDC al hilo nuevo
+    @Bean(name = "lookupExecutor")
+    public AsyncTaskExecutor lookupExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("lookup-");
+        executor.setVirtualThreads(true);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+}
@@ -0,0 +1,122 @@
+package com.crm.mcsv_auth.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkheads por tipo de tráfico. Con hilos virtuales el pool de Tomcat deja de ser el límite, así
+ * que la concurrencia se acota aquí: la validación de tokens (gateway) tiene su propio cupo y no
+ * compite con login/refresh, que dependen de mcsv-user y pueden quedarse esperando. Si un carril
+ * está lleno la petición se rechaza con 503 en lugar de encolarse indefinidamente.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@Slf4j
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    private final Lane validationLane;
+    private final Lane loginLane;
+
+    public BulkheadFilter(
+            MeterRegistry meterRegistry,
+            @Value("${bulkhead.validation.max-concurrent:1000}") int validationMaxConcurrent,
+            @Value("${bulkhead.validation.max-wait:0ms}") Duration validationMaxWait,
+            @Value("${bulkhead.login.max-concurrent:50}") int loginMaxConcurrent,
+            @Value("${bulkhead.login.max-wait:200ms}") Duration loginMaxWait) {
+        this.validationLane = new Lane("validation", validationMaxConcurrent, validationMaxWait, meterRegistry);
+        this.loginLane = new Lane("login", loginMaxConcurrent, loginMaxWait, meterRegistry);
+    }
+
+    // Health checks y métricas no ocupan cupo: un carril de login lleno no debe tumbar la réplica
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return path(request).startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Lane lane = isValidation(request) ? validationLane : loginLane;
+        if (!lane.tryEnter()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many concurrent requests");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            lane.exit();
+        }
+    }
+
+    // Endpoints que consulta el gateway en cada petición: solo JWT y, como mucho, una consulta por sid
+    private boolean isValidation(HttpServletRequest request) {
+        String path = path(request);
+        return path.startsWith("/v1/validate") || path.equals("/validate");
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static final class Lane {
+
+        private final String name;
+        private final Semaphore permits;
+        private final long maxWaitNanos;
+        private final Counter rejected;
+
+        Lane(String name, int maxConcurrent, Duration maxWait, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.permits = new Semaphore(maxConcurrent);
+            this.maxWaitNanos = maxWait.toNanos();
+            this.rejected = Counter.builder("auth.bulkhead.rejected")
+                    .description("Requests rejected because the bulkhead lane was full")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            Gauge.builder("auth.bulkhead.available", permits, Semaphore::availablePermits)
+                    .description("Free slots in the bulkhead lane")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+        }
+
+        boolean tryEnter() {
+            boolean acquired;
+            try {
+                acquired = maxWaitNanos <= 0
+                        ? permits.tryAcquire()
+                        : permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                rejected.increment();
+                log.debug("Bulkhead '{}' full, rejecting request", name);
+            }
+            return acquired;
+        }
+
+        void exit() {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.crm.mcsv_auth.config;
+
+import com.crm.mcsv_auth.service.impl.LocalRateLimitBackend;
+import com.crm.mcsv_auth.service.impl.RedisRateLimitBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@Configuration
+public class RateLimitConfig {
+
+    // Siempre presente: es el limitador por defecto y el respaldo del de Redis
+    @Bean
+    public LocalRateLimitBackend localRateLimitBackend(@Value("${rate-limit.max-keys:100000}") int maxKeys,
+                                                       MeterRegistry meterRegistry) {
+        LocalRateLimitBackend backend = new LocalRateLimitBackend(maxKeys);
+        meterRegistry.gauge("auth.ratelimit.local.keys", backend, LocalRateLimitBackend::size);
+        return backend;
+    }
+
+    // Con rate-limit.backend=redis el limitador compartido es el que recibe RateLimiterService
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "redis")
+    public RedisRateLimitBackend redisRateLimitBackend(StringRedisTemplate redisTemplate,
+                                                       LocalRateLimitBackend localRateLimitBackend) {
+        return new RedisRateLimitBackend(redisTemplate, localRateLimitBackend);
+    }
+}
@@ -1,14 +1,20 @@
 package com.crm.mcsv_auth.controller;
 
 import com.crm.mcsv_auth.dto.TicketValidationResponse;
+import com.crm.mcsv_auth.dto.TokenValidationBatchRequest;
 import com.crm.mcsv_auth.dto.TokenValidationResponse;
 import com.crm.mcsv_auth.service.AuthService;
 import com.crm.mcsv_auth.service.WsTicketService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RestController
 @RequiredArgsConstructor
 public class AuthorizerController {
@@ -25,6 +31,19 @@ public class AuthorizerController {
         return new TokenValidationResponse(false, "Invalid token");
     }
 
+    /**
+     * Valida uno o varios tokens enviados en el body (no en la URL, para que no acaben en los logs de acceso).
+     * Las respuestas mantienen el orden de la petición.
+     */
+    @PostMapping("/v1/validateTokens")
+    public List<TokenValidationResponse> validateTokens(@Valid @RequestBody TokenValidationBatchRequest request) {
+        List<TokenValidationResponse> responses = new ArrayList<>(request.getTokens().size());
+        for (String jwt : request.getTokens()) {
+            responses.add(validateToken(jwt));
+        }
+        return responses;
+    }
+
     @PostMapping("/v1/validateTokenUrl")
     public TokenValidationResponse validateTokenUrl(
             @RequestParam String jwt,
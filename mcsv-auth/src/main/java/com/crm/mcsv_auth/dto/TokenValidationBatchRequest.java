@@ -0,0 +1,21 @@
+package com.crm.mcsv_auth.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TokenValidationBatchRequest {
+
+    @NotEmpty(message = "At least one token is required")
+    @Size(max = 100, message = "A maximum of 100 tokens can be validated per request")
+    private List<String> tokens;
+}
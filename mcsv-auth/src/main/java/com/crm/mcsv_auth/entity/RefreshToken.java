@@ -25,7 +25,10 @@ import java.time.LocalDateTime;
     @Index(name = "idx_refresh_token_user_id", columnList = "user_id"),
     @Index(name = "idx_refresh_token_session_id", columnList = "session_id"),
     @Index(name = "idx_refresh_token_session_revoked", columnList = "session_id, revoked"),
-    @Index(name = "idx_refresh_token_session_expires", columnList = "session_id, expires_at")
+    @Index(name = "idx_refresh_token_session_expires", columnList = "session_id, expires_at"),
+    @Index(name = "idx_refresh_token_family_revoked", columnList = "family_id, revoked"),
+    @Index(name = "idx_refresh_token_user_revoked", columnList = "user_id, revoked"),
+    @Index(name = "idx_refresh_token_expires", columnList = "expires_at")
 })
 @Data
 @NoArgsConstructor
@@ -46,6 +49,10 @@ public class RefreshToken {
     @Column(name = "session_id")
     private Long sessionId;
 
+    // Familia de rotación: todos los tokens que derivan del mismo login comparten familyId
+    @Column(name = "family_id", length = 36)
+    private String familyId;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "session_id", insertable = false, updatable = false,
             foreignKey = @ForeignKey(name = "fk_refresh_token_session"))
@@ -1,5 +1,6 @@
 package com.crm.mcsv_auth.entity;
 
+import com.crm.mcsv_auth.util.SessionKeys;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -20,7 +21,10 @@ import java.time.LocalDateTime;
 @Table(name = "user_sessions", indexes = {
     @Index(name = "idx_user_session_user_id", columnList = "user_id"),
     @Index(name = "idx_user_session_user_revoked_expires", columnList = "user_id, revoked, expires_at"),
-    @Index(name = "idx_user_session_user_device_revoked", columnList = "user_id, device_id, revoked")
+    @Index(name = "idx_user_session_user_device_revoked", columnList = "user_id, device_id, revoked"),
+    @Index(name = "idx_user_session_user_revoked_device_key", columnList = "user_id, revoked, device_key"),
+    @Index(name = "idx_user_session_user_revoked_fingerprint", columnList = "user_id, revoked, fingerprint_hash"),
+    @Index(name = "idx_user_session_expires", columnList = "expires_at")
 })
 @Data
 @NoArgsConstructor
@@ -44,6 +48,13 @@ public class UserSession {
     @Column(name = "device_id", length = 128)
     private String deviceId;
 
+    // Claves de agrupación calculadas al escribir (ver SessionKeys)
+    @Column(name = "device_key", length = 128)
+    private String deviceKey;
+
+    @Column(name = "fingerprint_hash", length = 64)
+    private String fingerprintHash;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -62,6 +73,7 @@ public class UserSession {
 
     @PrePersist
     protected void onCreate() {
+        refreshKeys();
         createdAt = LocalDateTime.now();
         lastSeenAt = createdAt;
         if (expiresAt == null) {
@@ -71,9 +83,15 @@ public class UserSession {
 
     @PreUpdate
     protected void onUpdate() {
+        refreshKeys();
         lastSeenAt = LocalDateTime.now();
     }
 
+    public void refreshKeys() {
+        deviceKey = SessionKeys.deviceKey(deviceId);
+        fingerprintHash = SessionKeys.fingerprint(ipAddress, userAgent);
+    }
+
     public boolean isExpired() {
         return expiresAt != null && LocalDateTime.now().isAfter(expiresAt);
     }
@@ -0,0 +1,67 @@
+package com.crm.mcsv_auth.event;
+
+import com.crm.mcsv_auth.config.JwtConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Publica en Redis las revocaciones confirmadas para que los gateways invaliden sus caches
+ * de validación de tokens ({@code session:<userId>:<sessionId>} por cada sid y, al revocar todas las
+ * sesiones, {@code user:<userId>}). Las sesiones revocadas se guardan además en un sorted set que los
+ * gateways cargan al arrancar.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RevocationEventListener {
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Value("${revocation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${revocation.channel:auth:revocations}")
+    private String channel;
+
+    /** Sorted set con las sesiones revocadas (score = epoch millis hasta el que el sid debe rechazarse). */
+    @Value("${revocation.denylist-key:auth:revoked-sessions}")
+    private String denylistKey;
+
+    private final JwtConfig jwtConfig;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void handle(SessionRevokedEvent event) {
+        if (!enabled || event.userId() == null) {
+            return;
+        }
+        StringRedisTemplate redisTemplate = redisTemplateProvider.getIfAvailable();
+        if (redisTemplate == null) {
+            log.debug("StringRedisTemplate not available; skipping revocation of user {}", event.userId());
+            return;
+        }
+        try {
+            if (event.sessionIds() != null && !event.sessionIds().isEmpty()) {
+                // Un access token vive como máximo jwt.expireAt minutos: pasado ese tiempo el sid ya no hace falta
+                long now = System.currentTimeMillis();
+                long deniedUntil = now + jwtConfig.getExpireAt() * 60 * 1000;
+                for (Long sessionId : event.sessionIds()) {
+                    redisTemplate.opsForZSet().add(denylistKey, sessionId.toString(), deniedUntil);
+                    redisTemplate.convertAndSend(channel, "session:" + event.userId() + ":" + sessionId);
+                }
+                redisTemplate.opsForZSet().removeRangeByScore(denylistKey, 0, now);
+            }
+            if (event.allSessions() || event.sessionIds() == null || event.sessionIds().isEmpty()) {
+                redisTemplate.convertAndSend(channel, "user:" + event.userId());
+            }
+        } catch (Exception e) {
+            // La revocación ya está persistida; los gateways la verán al expirar su cache
+            log.warn("Could not publish revocation for user {}: {}", event.userId(), e.getMessage());
+        }
+    }
+}
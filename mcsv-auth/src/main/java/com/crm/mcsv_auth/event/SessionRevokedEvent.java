@@ -0,0 +1,22 @@
+package com.crm.mcsv_auth.event;
+
+import java.util.List;
+
+/**
+ * Revocación de sesiones de un usuario. {@code allSessions} indica que se revocaron todas: además de
+ * los sids afectados se invalida en los gateways todo lo cacheado del usuario.
+ */
+public record SessionRevokedEvent(Long userId, List<Long> sessionIds, boolean allSessions) {
+
+    public SessionRevokedEvent(Long userId, List<Long> sessionIds) {
+        this(userId, sessionIds, false);
+    }
+
+    public static SessionRevokedEvent allSessions(Long userId, List<Long> sessionIds) {
+        return new SessionRevokedEvent(userId, sessionIds, true);
+    }
+
+    public static SessionRevokedEvent session(Long userId, Long sessionId) {
+        return new SessionRevokedEvent(userId, List.of(sessionId));
+    }
+}
@@ -2,11 +2,14 @@ package com.crm.mcsv_auth.exception;
 
 import com.crm.common.exception.BaseGlobalExceptionHandler;
 import com.crm.common.exception.ErrorResponse;
+import com.crm.mcsv_auth.client.UserClientFallback.UserClientUnavailableException;
+import feign.FeignException;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -68,6 +71,24 @@ public class GlobalExceptionHandler extends BaseGlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.UNAUTHORIZED);
     }
 
+    @ExceptionHandler({UserClientUnavailableException.class, FeignException.ServiceUnavailable.class})
+    public ResponseEntity<ErrorResponse> handleUserServiceUnavailable(
+            RuntimeException ex, WebRequest request) {
+        log.warn("User service unavailable: {}", ex.getMessage());
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error("Service Unavailable")
+                .message("User service temporarily unavailable")
+                .path(request.getDescription(false).replace("uri=", ""))
+                .build();
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorResponse);
+    }
+
     @Data
     @Builder
     @NoArgsConstructor
@@ -2,7 +2,11 @@ package com.crm.mcsv_auth.repository;
 
 import com.crm.mcsv_auth.entity.RefreshToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -22,4 +26,30 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long
     void deleteByUserId(Long userId);
 
     void deleteByExpiresAtBeforeAndRevokedFalse(LocalDateTime date);
+
+    // Revoca el token solo si sigue activo: 0 filas significa que otro refresh lo usó antes
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE RefreshToken t SET t.revoked = true, t.revokedAt = :now WHERE t.id = :id AND t.revoked = false")
+    int revokeIfActive(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE RefreshToken t SET t.revoked = true, t.revokedAt = :now WHERE t.userId = :userId AND t.revoked = false")
+    int revokeActiveByUserId(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE RefreshToken t SET t.revoked = true, t.revokedAt = :now WHERE t.sessionId = :sessionId AND t.revoked = false")
+    int revokeActiveBySessionId(@Param("sessionId") Long sessionId, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE RefreshToken t SET t.revoked = true, t.revokedAt = :now WHERE t.familyId = :familyId AND t.revoked = false")
+    int revokeActiveByFamily(@Param("familyId") String familyId, @Param("now") LocalDateTime now);
+
+    // Borrado por lotes (cada lote en su transacción) de tokens caducados, revocados o no.
+    // SKIP LOCKED permite que varias réplicas ejecuten la limpieza a la vez sin bloquearse.
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM refresh_tokens WHERE id IN (SELECT id FROM refresh_tokens " +
+                   "WHERE expires_at < :cutoff LIMIT :limit FOR UPDATE SKIP LOCKED)",
+           nativeQuery = true)
+    int purgeExpired(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
 }
@@ -2,7 +2,11 @@ package com.crm.mcsv_auth.repository;
 
 import com.crm.mcsv_auth.entity.UserSession;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.time.LocalDateTime;
@@ -18,4 +22,49 @@ public interface UserSessionRepository extends JpaRepository<UserSession, Long>
     Optional<UserSession> findByIdAndUserIdAndRevokedFalse(Long id, Long userId);
     Optional<UserSession> findByIdAndUserIdAndRevokedFalseAndExpiresAtAfter(Long id, Long userId, LocalDateTime now);
     Optional<UserSession> findFirstByUserIdAndRevokedFalseOrderByCreatedAtDesc(Long userId);
+    boolean existsByIdAndRevokedTrue(Long id);
+    Optional<UserSession> findFirstByUserIdAndRevokedFalseAndExpiresAtAfterOrderByLastSeenAtDescCreatedAtDesc(Long userId, LocalDateTime now);
+
+    // Sesiones activas del mismo dispositivo: por deviceKey o por huella ip|userAgent (ambas indexadas).
+    // Sin deviceId se pasa "" como deviceKey, que nunca coincide porque la columna guarda null.
+    @Query("SELECT s FROM UserSession s WHERE s.userId = :userId AND s.revoked = false AND s.expiresAt > :now " +
+           "AND (s.deviceKey = :deviceKey OR s.fingerprintHash = :fingerprint) " +
+           "ORDER BY s.lastSeenAt DESC, s.createdAt DESC")
+    List<UserSession> findActiveMatching(@Param("userId") Long userId,
+                                         @Param("deviceKey") String deviceKey,
+                                         @Param("fingerprint") String fingerprint,
+                                         @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserSession s SET s.revoked = true, s.revokedAt = :now WHERE s.id IN :ids AND s.revoked = false")
+    int revokeByIds(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+
+    // Sids que hay que propagar a los gateways al revocar todas las sesiones del usuario. Incluye las
+    // caducadas sin revocar: sus access tokens pueden seguir vivos unos minutos (las borra la limpieza)
+    @Query("SELECT s.id FROM UserSession s WHERE s.userId = :userId AND s.revoked = false")
+    List<Long> findUnrevokedIdsByUserId(@Param("userId") Long userId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserSession s SET s.revoked = true, s.revokedAt = :now WHERE s.userId = :userId AND s.revoked = false")
+    int revokeAllByUserId(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    // Borrado por lotes de sesiones caducadas o revocadas hace tiempo que ya no tienen refresh tokens
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM user_sessions WHERE id IN (SELECT s.id FROM user_sessions s " +
+                   "WHERE (s.expires_at < :cutoff OR (s.revoked = true AND s.revoked_at < :cutoff)) " +
+                   "AND NOT EXISTS (SELECT 1 FROM refresh_tokens t WHERE t.session_id = s.id) " +
+                   "LIMIT :limit FOR UPDATE SKIP LOCKED)",
+           nativeQuery = true)
+    int purgeInactive(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    // Rellena las claves de agrupación de sesiones activas creadas antes de existir las columnas,
+    // en su propia transacción. Mismo cálculo que SessionKeys (null cuenta como cadena vacía)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE user_sessions SET device_key = NULLIF(lower(trim(device_id)), ''), " +
+                   "fingerprint_hash = encode(sha256(convert_to(coalesce(trim(ip_address), '') || '|' || coalesce(trim(user_agent), ''), 'UTF8')), 'hex') " +
+                   "WHERE fingerprint_hash IS NULL AND revoked = false",
+           nativeQuery = true)
+    int backfillMatchKeys();
 }
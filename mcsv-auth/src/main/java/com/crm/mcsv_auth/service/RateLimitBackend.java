@@ -0,0 +1,10 @@
+package com.crm.mcsv_auth.service;
+
+public interface RateLimitBackend {
+
+    /**
+     * Registra un intento para {@code key} si no supera {@code limit} en la ventana deslizante
+     * de {@code windowMillis}. Devuelve false si el intento debe rechazarse.
+     */
+    boolean tryAcquire(String key, int limit, long windowMillis);
+}
@@ -1,36 +1,44 @@
 package com.crm.mcsv_auth.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
+@Slf4j
 public class RateLimiterService {
 
-    private static class RateLimitState {
-        long windowStartMillis;
-        int count;
-    }
+    private final RateLimitBackend backend;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
 
-    private final ConcurrentHashMap<String, RateLimitState> states = new ConcurrentHashMap<>();
+    // El backend lo elige RateLimitConfig (local o, con rate-limit.backend=redis, compartido)
+    public RateLimiterService(RateLimitBackend backend, MeterRegistry meterRegistry) {
+        this.backend = backend;
+        this.meterRegistry = meterRegistry;
+        log.info("Rate limiter backend: {}", backend.getClass().getSimpleName());
+    }
 
     public void checkRateLimit(String key, int limit, long windowSeconds) {
-        long now = System.currentTimeMillis();
-        RateLimitState state = states.compute(key, (k, existing) -> {
-            if (existing == null || now - existing.windowStartMillis >= windowSeconds * 1000) {
-                RateLimitState fresh = new RateLimitState();
-                fresh.windowStartMillis = now;
-                fresh.count = 1;
-                return fresh;
-            }
-            existing.count += 1;
-            return existing;
-        });
-
-        if (state.count > limit) {
+        if (!backend.tryAcquire(key, limit, windowSeconds * 1000)) {
+            rejectionCounter(key).increment();
             throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many requests");
         }
     }
+
+    // Una serie por tipo de operación ("login", "forgot-password"), nunca por IP
+    private Counter rejectionCounter(String key) {
+        int separator = key.indexOf(':');
+        String scope = separator > 0 ? key.substring(0, separator) : key;
+        return rejections.computeIfAbsent(scope, s -> Counter.builder("auth.ratelimit.rejected")
+                .description("Requests rejected by the auth rate limiter")
+                .tag("scope", s)
+                .register(meterRegistry));
+    }
 }
@@ -2,10 +2,14 @@ package com.crm.mcsv_auth.service;
 
 import com.crm.mcsv_auth.entity.RefreshToken;
 
+import java.time.LocalDateTime;
+
 public interface TokenService {
 
     RefreshToken createRefreshToken(Long userId, Long sessionId);
 
+    RefreshToken rotateRefreshToken(RefreshToken current, Long sessionId);
+
     RefreshToken validateRefreshToken(String token);
 
     void revokeRefreshToken(String token);
@@ -14,5 +18,5 @@ public interface TokenService {
 
     void revokeSessionTokens(Long sessionId);
 
-    void deleteExpiredTokens();
+    int deleteExpiredTokens(LocalDateTime cutoff, int batchSize);
 }
@@ -0,0 +1,14 @@
+package com.crm.mcsv_auth.service;
+
+import java.time.Duration;
+
+public interface WsTicketStore {
+
+    void save(String ticket, Long userId, Duration ttl);
+
+    /**
+     * Obtiene y elimina el ticket de forma atómica. Devuelve {@code null} si no existe,
+     * ya se usó o expiró.
+     */
+    Long consume(String ticket);
+}
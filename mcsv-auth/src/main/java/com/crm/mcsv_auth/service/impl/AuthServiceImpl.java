@@ -1,10 +1,11 @@
 package com.crm.mcsv_auth.service.impl;
 
-import com.crm.common.client.EventBridgeNotificationClient;
-import com.crm.common.client.SqsEmailClient;
+import com.crm.common.outbox.MessageDispatcher;
 import com.crm.mcsv_auth.client.UserClient;
+import com.crm.mcsv_auth.client.UserClientFallback.UserClientUnavailableException;
 import com.crm.mcsv_auth.config.JwtConfig;
 import com.crm.mcsv_auth.dto.AuthResponse;
+import com.crm.mcsv_auth.dto.AuthenticateResponse;
 import com.crm.mcsv_auth.dto.CreateUserInternalRequest;
 import com.crm.common.dto.EmailRequest;
 import com.crm.common.dto.SendNotificationRequest;
@@ -14,6 +15,7 @@ import com.crm.mcsv_auth.dto.MfaStatusResponse;
 import com.crm.mcsv_auth.dto.RefreshTokenRequest;
 import com.crm.mcsv_auth.dto.RegisterRequest;
 import com.crm.mcsv_auth.dto.ResetPasswordRequest;
+import com.crm.mcsv_auth.dto.UserAuthoritiesDTO;
 import com.crm.mcsv_auth.dto.UserDTO;
 import com.crm.mcsv_auth.dto.VerifyEmailRequest;
 import com.crm.mcsv_auth.entity.EmailVerificationCode;
@@ -29,14 +31,21 @@ import com.crm.mcsv_auth.repository.UserSessionRepository;
 import com.crm.mcsv_auth.service.AuthService;
 import com.crm.mcsv_auth.service.MfaService;
 import com.crm.mcsv_auth.service.TokenService;
+import feign.FeignException;
 import com.crm.mcsv_auth.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -46,6 +55,9 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -54,8 +66,7 @@ import java.util.stream.Collectors;
 public class AuthServiceImpl implements AuthService {
 
     private final UserClient userClient;
-    private final SqsEmailClient sqsEmailClient;
-    private final EventBridgeNotificationClient eventBridgeNotificationClient;
+    private final MessageDispatcher messageDispatcher;
     private final JwtUtil jwtUtil;
     private final TokenService tokenService;
     private final PasswordEncoder passwordEncoder;
@@ -65,6 +76,10 @@ public class AuthServiceImpl implements AuthService {
     private final MfaService mfaService;
     private final JwtConfig jwtConfig;
     private final UserSessionManager userSessionManager;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+    @Qualifier("lookupExecutor")
+    private final AsyncTaskExecutor lookupExecutor;
 
     @Value("${app.frontend.url:http://localhost:5173}")
     private String frontendUrl;
@@ -72,6 +87,8 @@ public class AuthServiceImpl implements AuthService {
     private static final int VERIFICATION_CODE_EXPIRY_MINUTES = 10;
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
 
+    private record IssuedTokens(UserSession session, RefreshToken refreshToken) {}
+
     @Override
     @Transactional
     public Map<String, String> register(RegisterRequest request) {
@@ -110,30 +127,29 @@ public class AuthServiceImpl implements AuthService {
         return Map.of("message", "Registration successful. Please check your email for the verification code.");
     }
 
+    // Sin transacción envolvente: las llamadas a mcsv-user no retienen una conexión de BD mientras
+    // esperan; las escrituras van en transacciones cortas al final
     @Override
-    @Transactional
     public AuthResponse login(LoginRequest request, String ipAddress, String userAgent, String deviceId) {
         log.info("Login attempt for: {}", request.getEmail());
 
-        // Validar credenciales
-        boolean isValidCredentials = validateCredentials(request.getEmail(), request.getPassword());
-        if (!isValidCredentials) {
-            throw new AuthenticationException("Invalid username or password");
-        }
-
-        // Obtener usuario
-        UserDTO user = getUserByUsernameOrEmail(request.getEmail());
+        // Validar credenciales y obtener usuario con roles/permisos (una sola llamada a mcsv-user)
+        UserDTO user = timeLoginStage("authenticate",
+                () -> authenticate(request.getEmail(), request.getPassword()));
 
         // Validar código MFA si está habilitado
-        if (mfaService.isMfaEnabled(user.getId())) {
-            if (request.getTotpCode() == null || request.getTotpCode().isBlank()) {
-                throw new AuthenticationException("MFA code is required");
+        timeLoginStage("mfa", () -> {
+            if (mfaService.isMfaEnabled(user.getId())) {
+                if (request.getTotpCode() == null || request.getTotpCode().isBlank()) {
+                    throw new AuthenticationException("MFA code is required");
+                }
+                boolean mfaValid = mfaService.verifyTotp(user.getId(), request.getTotpCode());
+                if (!mfaValid) {
+                    throw new AuthenticationException("Invalid MFA code");
+                }
             }
-            boolean mfaValid = mfaService.verifyTotp(user.getId(), request.getTotpCode());
-            if (!mfaValid) {
-                throw new AuthenticationException("Invalid MFA code");
-            }
-        }
+            return null;
+        });
 
         // Validar email verificado
         if (!Boolean.TRUE.equals(user.getEmailVerified())) {
@@ -160,16 +176,24 @@ public class AuthServiceImpl implements AuthService {
                 .map(UserDTO.PermissionDTO::getName)
                 .collect(Collectors.toSet());
 
-        // Generar tokens
-        String accessToken = jwtUtil.generateAccessToken(user.getId(), user.getUsername(), roles, permissions);
-        UserSession session = userSessionManager.registerSession(user.getId(), ipAddress, userAgent, deviceId);
-        RefreshToken refreshToken = tokenService.createRefreshToken(user.getId(), session.getId());
+        // Generar tokens (sesión, refresh token y notificación en la misma transacción)
+        IssuedTokens issued = transactionTemplate.execute(status -> {
+            UserSession session = timeLoginStage("session",
+                    () -> userSessionManager.registerSession(user.getId(), ipAddress, userAgent, deviceId));
+            RefreshToken refreshToken = timeLoginStage("refresh-token",
+                    () -> tokenService.createRefreshToken(user.getId(), session.getId()));
+
+            // Enviar notificación de bienvenida al login
+            sendLoginNotification(user.getId(), user.getUsername());
+            return new IssuedTokens(session, refreshToken);
+        });
+        UserSession session = issued.session();
+        RefreshToken refreshToken = issued.refreshToken();
+        String accessToken = jwtUtil.generateAccessToken(
+                user.getId(), user.getUsername(), roles, permissions, session.getId());
 
         log.info("User logged in successfully: {}", user.getUsername());
 
-        // Enviar notificación de bienvenida al login
-        sendLoginNotification(user.getId(), user.getUsername());
-
         // Construir respuesta
         return AuthResponse.builder()
                 .accessToken(accessToken)
@@ -189,39 +213,39 @@ public class AuthServiceImpl implements AuthService {
     }
 
     @Override
-    @Transactional
     public AuthResponse refreshToken(RefreshTokenRequest request, String ipAddress, String userAgent, String deviceId) {
         log.info("Refresh token request");
 
         // Validar refresh token
         RefreshToken refreshToken = tokenService.validateRefreshToken(request.getRefreshToken());
 
-        // Obtener usuario
-        UserDTO user = getUserById(refreshToken.getUserId());
-
-        // Extraer roles y permisos
-        Set<String> roles = user.getRoles().stream()
-                .map(UserDTO.RoleDTO::getName)
-                .collect(Collectors.toSet());
-
-        Set<String> permissions = user.getRoles().stream()
-                .filter(r -> r.getPermissions() != null)
-                .flatMap(r -> r.getPermissions().stream())
-                .map(UserDTO.PermissionDTO::getName)
-                .collect(Collectors.toSet());
+        // Roles y permisos ya aplanados (cacheados en mcsv-user), sin cargar el grafo completo.
+        // No dependen de la sesión: se piden en paralelo mientras se rota el token
+        CompletableFuture<UserAuthoritiesDTO> authorities = CompletableFuture.supplyAsync(
+                () -> getUserAuthorities(refreshToken.getUserId()), lookupExecutor);
+
+        // Se espera a mcsv-user antes del commit para que un fallo no deje el token rotado sin entregar
+        record Refreshed(UserSession session, RefreshToken refreshToken, UserAuthoritiesDTO user) {}
+        Refreshed refreshed = transactionTemplate.execute(status -> {
+            UserSession attached = userSessionManager.attachSession(
+                    refreshToken.getUserId(),
+                    refreshToken.getSessionId(),
+                    ipAddress,
+                    userAgent,
+                    deviceId);
+            // Rotar refresh token dentro de la misma familia
+            RefreshToken rotated = tokenService.rotateRefreshToken(refreshToken, attached.getId());
+            return new Refreshed(attached, rotated, join(authorities));
+        });
+        UserAuthoritiesDTO user = refreshed.user();
+        Set<String> roles = user.getRoles();
+        Set<String> permissions = user.getPermissions();
+        UserSession session = refreshed.session();
+        RefreshToken newRefreshToken = refreshed.refreshToken();
 
         // Generar nuevo access token
-        String newAccessToken = jwtUtil.generateAccessToken(user.getId(), user.getUsername(), roles, permissions);
-
-        // Rotar refresh token
-        tokenService.revokeRefreshToken(request.getRefreshToken());
-        UserSession session = userSessionManager.attachSession(
-                user.getId(),
-                refreshToken.getSessionId(),
-                ipAddress,
-                userAgent,
-                deviceId);
-        RefreshToken newRefreshToken = tokenService.createRefreshToken(user.getId(), session.getId());
+        String newAccessToken = jwtUtil.generateAccessToken(
+                user.getUserId(), user.getUsername(), roles, permissions, session.getId());
 
         log.info("Token refreshed successfully for user: {}", user.getUsername());
 
@@ -231,31 +255,26 @@ public class AuthServiceImpl implements AuthService {
                 .tokenType("Bearer")
                 .expiresIn(jwtConfig.getExpireAt() * 60)
                 .user(AuthResponse.UserInfo.builder()
-                        .id(user.getId())
+                        .id(user.getUserId())
                         .username(user.getUsername())
                         .email(user.getEmail())
                         .firstName(user.getFirstName())
                         .lastName(user.getLastName())
-                        .avatarUrl(extractAvatarUrl(user))
+                        .avatarUrl(user.getAvatarUrl())
                         .roles(roles)
                         .build())
                 .build();
     }
 
+    // Un token reutilizado revoca su familia dentro de validateRefreshToken: eso debe confirmarse
     @Override
-    @Transactional
+    @Transactional(noRollbackFor = TokenException.class)
     public void logout(String refreshToken, boolean logoutAll, String ipAddress, String userAgent, String deviceId) {
         log.info("Logout request");
         RefreshToken token = tokenService.validateRefreshToken(refreshToken);
         if (logoutAll) {
             tokenService.revokeAllUserTokens(token.getUserId());
-            var sessions = userSessionRepository.findByUserId(token.getUserId());
-            LocalDateTime now = LocalDateTime.now();
-            sessions.forEach(session -> {
-                session.setRevoked(true);
-                session.setRevokedAt(now);
-            });
-            userSessionRepository.saveAll(sessions);
+            userSessionRepository.revokeAllByUserId(token.getUserId(), LocalDateTime.now());
             log.info("User logged out from all devices");
         } else {
             tokenService.revokeRefreshToken(refreshToken);
@@ -309,8 +328,15 @@ public class AuthServiceImpl implements AuthService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public boolean validateToken(String token) {
-        return jwtUtil.validateToken(token);
+        Claims claims = jwtUtil.parseValidClaims(token);
+        if (claims == null) {
+            return false;
+        }
+        // Tokens con sid: la sesión no debe estar revocada (logout, cierre remoto de sesión)
+        Long sessionId = jwtUtil.extractSessionId(claims);
+        return sessionId == null || !userSessionRepository.existsByIdAndRevokedTrue(sessionId);
     }
 
     @Override
@@ -349,23 +375,13 @@ public class AuthServiceImpl implements AuthService {
 
     private UserDTO getUserByUsernameOrEmail(String usernameOrEmail) {
         try {
-            // Intentar obtener por username primero
-            ResponseEntity<UserDTO> response = userClient.getUserByUsername(usernameOrEmail);
+            // Una sola llamada: mcsv-user resuelve username o email en una consulta
+            ResponseEntity<UserDTO> response = userClient.getUserByUsernameOrEmail(usernameOrEmail);
             if (response.getBody() != null) {
                 return response.getBody();
             }
         } catch (Exception e) {
-            log.debug("User not found by username, trying email");
-        }
-
-        try {
-            // Si no se encuentra, intentar por email
-            ResponseEntity<UserDTO> response = userClient.getUserByEmail(usernameOrEmail);
-            if (response.getBody() != null) {
-                return response.getBody();
-            }
-        } catch (Exception e) {
-            log.error("User not found by email", e);
+            log.debug("User not found by username or email: {}", e.getMessage());
         }
 
         throw new AuthenticationException("Invalid username or password");
@@ -379,6 +395,25 @@ public class AuthServiceImpl implements AuthService {
         return response.getBody();
     }
 
+    private UserAuthoritiesDTO getUserAuthorities(Long id) {
+        ResponseEntity<UserAuthoritiesDTO> response = userClient.getUserAuthorities(id);
+        if (response.getBody() == null) {
+            throw new AuthenticationException("User not found");
+        }
+        return response.getBody();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     private UserDTO getUserById(Long id) {
         ResponseEntity<UserDTO> response = userClient.getUserById(id);
         if (response.getBody() == null) {
@@ -437,7 +472,7 @@ public class AuthServiceImpl implements AuthService {
         passwordResetTokenRepository.save(passwordToken);
 
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(userId)
                     .title("Email verificado")
                     .message("Tu dirección de correo ha sido verificada exitosamente. Ya puedes acceder a todas las funciones.")
@@ -524,7 +559,7 @@ public class AuthServiceImpl implements AuthService {
                     ))
                     .build();
 
-            sqsEmailClient.sendEmail(emailRequest);
+            messageDispatcher.email(emailRequest);
         } catch (Exception e) {
             log.error("Failed to send verification email to: {}", email, e);
         }
@@ -553,7 +588,7 @@ public class AuthServiceImpl implements AuthService {
         log.info("Password updated successfully for user ID: {}", resetToken.getUserId());
 
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(resetToken.getUserId())
                     .title("Contraseña actualizada")
                     .message("Tu contraseña ha sido actualizada exitosamente. Si no realizaste este cambio, contacta al administrador.")
@@ -570,7 +605,7 @@ public class AuthServiceImpl implements AuthService {
 
     private void sendWelcomeNotification(Long userId, String username) {
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(userId)
                     .title("Bienvenido a CRM")
                     .message("Hola " + username + ", tu cuenta ha sido creada exitosamente. Verifica tu correo para comenzar.")
@@ -583,7 +618,7 @@ public class AuthServiceImpl implements AuthService {
 
     private void sendLoginNotification(Long userId, String username) {
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(userId)
                     .title("Inicio de sesión")
                     .message("Bienvenido de vuelta, " + username + ". Has iniciado sesión exitosamente.")
@@ -596,33 +631,24 @@ public class AuthServiceImpl implements AuthService {
 
     @Override
     public AuthResponse.UserInfo getCurrentUser(String token) {
-        if (!jwtUtil.validateToken(token)) {
+        Claims claims = jwtUtil.parseValidClaims(token);
+        if (claims == null) {
             throw new AuthenticationException("Invalid or expired token");
         }
 
-        Long userId = jwtUtil.extractUserId(token);
-        UserDTO user = getUserById(userId);
-
-        Set<String> roles = user.getRoles().stream()
-                .map(UserDTO.RoleDTO::getName)
-                .collect(Collectors.toSet());
-
-        Set<String> permissions = user.getRoles().stream()
-                .filter(r -> r.getPermissions() != null)
-                .flatMap(r -> r.getPermissions().stream())
-                .map(UserDTO.PermissionDTO::getName)
-                .collect(Collectors.toSet());
+        // Permisos ya aplanados (y cacheados) en mcsv-user, sin cargar el grafo de roles
+        UserAuthoritiesDTO user = getUserAuthorities(jwtUtil.extractUserId(claims));
 
         return AuthResponse.UserInfo.builder()
-                .id(user.getId())
+                .id(user.getUserId())
                 .username(user.getUsername())
                 .email(user.getEmail())
                 .firstName(user.getFirstName())
                 .lastName(user.getLastName())
                 .phoneNumber(user.getPhoneNumber())
-                .avatarUrl(extractAvatarUrl(user))
-                .roles(roles)
-                .permissions(permissions)
+                .avatarUrl(user.getAvatarUrl())
+                .roles(user.getRoles())
+                .permissions(user.getPermissions())
                 .build();
     }
 
@@ -642,21 +668,42 @@ public class AuthServiceImpl implements AuthService {
         return user.getAvatarUrl();
     }
 
-    private boolean validateCredentials(String usernameOrEmail, String password) {
+    private UserDTO authenticate(String usernameOrEmail, String password) {
+        AuthenticateResponse response;
         try {
-            ResponseEntity<Boolean> response = userClient.validateCredentials(
-                    new UserClient.CredentialsRequest(usernameOrEmail, password)
-            );
-
-            if (response.getBody() != null) {
-                return response.getBody();
-            }
-
-            log.error("Error validating credentials - null response body");
-            return false;
+            response = userClient.authenticate(new UserClient.CredentialsRequest(usernameOrEmail, password)).getBody();
+        } catch (UserClientUnavailableException | FeignException.ServiceUnavailable e) {
+            // mcsv-user caído o saturado (circuito abierto, 503 del pool de hashing): no son credenciales inválidas
+            log.warn("User service unavailable while validating credentials: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Exception while validating credentials: {}", e.getMessage());
-            return false;
+            throw new AuthenticationException("Invalid username or password");
+        }
+
+        if (response == null || !response.isAuthenticated() || response.getUser() == null) {
+            throw new AuthenticationException("Invalid username or password");
+        }
+        return response.getUser();
+    }
+
+    /**
+     * Histograma de latencia por etapa del login (auth.login.stage{stage=...}).
+     */
+    private <T> T timeLoginStage(String stage, Supplier<T> action) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            outcome = "failure";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("auth.login.stage")
+                    .tag("stage", stage)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
         }
     }
 }
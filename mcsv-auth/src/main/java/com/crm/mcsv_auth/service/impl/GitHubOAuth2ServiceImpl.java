@@ -1,6 +1,6 @@
 package com.crm.mcsv_auth.service.impl;
 
-import com.crm.common.client.EventBridgeNotificationClient;
+import com.crm.common.outbox.MessageDispatcher;
 import com.crm.mcsv_auth.client.GitHubApiClient;
 import com.crm.mcsv_auth.client.GitHubTokenClient;
 import com.crm.mcsv_auth.client.UserClient;
@@ -41,7 +41,7 @@ public class GitHubOAuth2ServiceImpl implements GitHubOAuth2Service {
     private final JwtUtil jwtUtil;
     private final TokenService tokenService;
     private final JwtConfig jwtConfig;
-    private final EventBridgeNotificationClient eventBridgeNotificationClient;
+    private final MessageDispatcher messageDispatcher;
     private final UserSessionManager userSessionManager;
 
     @Override
@@ -103,8 +103,9 @@ public class GitHubOAuth2ServiceImpl implements GitHubOAuth2Service {
                 .map(UserDTO.PermissionDTO::getName)
                 .collect(Collectors.toSet());
 
-        String accessToken = jwtUtil.generateAccessToken(user.getId(), user.getUsername(), roles, permissions);
         UserSession session = userSessionManager.registerSession(user.getId(), ipAddress, userAgent, deviceId);
+        String accessToken = jwtUtil.generateAccessToken(
+                user.getId(), user.getUsername(), roles, permissions, session.getId());
         RefreshToken refreshToken = tokenService.createRefreshToken(user.getId(), session.getId());
 
         // 7. Enviar notificación
@@ -194,7 +195,7 @@ public class GitHubOAuth2ServiceImpl implements GitHubOAuth2Service {
 
     private void sendWelcomeNotification(Long userId, String username) {
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(userId)
                     .title("Bienvenido a CRM")
                     .message("Hola " + username + ", tu cuenta ha sido creada exitosamente con GitHub.")
@@ -207,7 +208,7 @@ public class GitHubOAuth2ServiceImpl implements GitHubOAuth2Service {
 
     private void sendLoginNotification(Long userId, String username) {
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(userId)
                     .title("Inicio de sesión")
                     .message("Bienvenido de vuelta, " + username + ". Has iniciado sesión con GitHub.")
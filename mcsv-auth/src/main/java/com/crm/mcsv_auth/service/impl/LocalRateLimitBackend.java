@@ -0,0 +1,108 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.service.RateLimitBackend;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Limitador en memoria por ventana deslizante aproximada (contador de la ventana actual más la
+ * parte proporcional de la anterior), sin ráfagas de 2× el límite en el borde de la ventana.
+ * Las claves se reparten en segmentos con su propio lock; cada segmento es un LRU acotado y las
+ * entradas inactivas se eliminan periódicamente, de modo que la memoria no crece con el número de IPs.
+ * El bean lo crea {@link com.crm.mcsv_auth.config.RateLimitConfig}.
+ */
+public class LocalRateLimitBackend implements RateLimitBackend {
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public LocalRateLimitBackend(int maxKeys) {
+        int maxKeysPerStripe = Math.max(16, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxKeysPerStripe);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String key, int limit, long windowMillis) {
+        return tryAcquire(key, limit, windowMillis, System.currentTimeMillis());
+    }
+
+    boolean tryAcquire(String key, int limit, long windowMillis, long now) {
+        long currentStart = now - Math.floorMod(now, windowMillis);
+        Stripe stripe = stripes[Math.floorMod(key.hashCode(), STRIPES)];
+
+        synchronized (stripe) {
+            Window window = stripe.windows.get(key);
+            if (window == null) {
+                window = new Window(currentStart, windowMillis);
+                stripe.windows.put(key, window);
+            } else if (window.start != currentStart) {
+                window.previous = currentStart - window.start == windowMillis ? window.current : 0;
+                window.current = 0;
+                window.start = currentStart;
+            }
+
+            double previousWeight = 1.0 - (double) (now - currentStart) / windowMillis;
+            if (window.previous * previousWeight + window.current >= limit) {
+                return false;
+            }
+            window.current++;
+            return true;
+        }
+    }
+
+    /**
+     * Elimina las claves cuya última ventana terminó hace más de una ventana (ya no influyen en el cálculo).
+     */
+    @Scheduled(fixedRate = 60_000)
+    public void evictIdle() {
+        evictIdle(System.currentTimeMillis());
+    }
+
+    void evictIdle(long now) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.windows.values().removeIf(window -> now - window.start >= 2 * window.length);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.windows.size();
+            }
+        }
+        return size;
+    }
+
+    private static final class Stripe {
+        private final Map<String, Window> windows;
+
+        private Stripe(int maxKeys) {
+            this.windows = new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+    }
+
+    private static final class Window {
+        private long start;
+        private final long length;
+        private int current;
+        private int previous;
+
+        private Window(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
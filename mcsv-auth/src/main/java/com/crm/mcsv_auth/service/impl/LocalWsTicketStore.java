@@ -0,0 +1,60 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.service.WsTicketStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Tickets en memoria de la réplica. Como todos los tickets tienen el mismo TTL, la cola de
+ * expiración queda ordenada por inserción y basta con retirar la cabeza mientras esté vencida:
+ * la limpieza cuesta O(tickets expirados) en lugar de recorrer todo el mapa.
+ */
+@Slf4j
+@Component
+public class LocalWsTicketStore implements WsTicketStore {
+
+    private record TicketData(Long userId, long expiresAt) {}
+
+    private record Expiry(String ticket, long expiresAt) {}
+
+    private final Map<String, TicketData> tickets = new ConcurrentHashMap<>();
+    private final Queue<Expiry> expiryQueue = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void save(String ticket, Long userId, Duration ttl) {
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        tickets.put(ticket, new TicketData(userId, expiresAt));
+        expiryQueue.add(new Expiry(ticket, expiresAt));
+    }
+
+    @Override
+    public Long consume(String ticket) {
+        TicketData data = tickets.remove(ticket);
+        if (data == null || data.expiresAt() < System.currentTimeMillis()) {
+            return null;
+        }
+        return data.userId();
+    }
+
+    @Scheduled(fixedRate = 5_000)
+    public void expireTickets() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        Expiry head;
+        while ((head = expiryQueue.peek()) != null && head.expiresAt() < now) {
+            if (expiryQueue.remove(head) && tickets.remove(head.ticket()) != null) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            log.debug("Expired {} WS tickets", removed);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Base32;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -28,6 +30,7 @@ public class MfaServiceImpl implements MfaService {
     private static final String ISSUER = "CRM";
 
     private final UserMfaRepository userMfaRepository;
+    private final MfaStateCache mfaStateCache;
     private final SecureRandom secureRandom = new SecureRandom();
     private final Base32 base32 = new Base32();
 
@@ -41,6 +44,8 @@ public class MfaServiceImpl implements MfaService {
         userMfa.setEnabled(false);
         userMfa.setVerifiedAt(null);
         userMfaRepository.save(userMfa);
+        invalidate(userId);
+        mfaStateCache.resetUsedSteps(userId);
 
         String otpauth = String.format("otpauth://totp/%s:%s?secret=%s&issuer=%s&digits=%d&period=%d",
                 ISSUER, username, secret, ISSUER, CODE_DIGITS, TIME_STEP_SECONDS);
@@ -54,40 +59,50 @@ public class MfaServiceImpl implements MfaService {
     @Override
     @Transactional
     public boolean verifyTotp(Long userId, String code) {
-        UserMfa userMfa = userMfaRepository.findByUserId(userId)
-                .orElseThrow(() -> new AuthenticationException("MFA not configured"));
+        MfaStateCache.MfaState state = loadState(userId);
+        if (!state.configured()) {
+            throw new AuthenticationException("MFA not configured");
+        }
+
+        long step = matchStep(state.totpSecret(), code);
+        if (step < 0) {
+            return false;
+        }
+
+        // El código de un paso se acepta hasta que termina el paso siguiente (deriva de ±1)
+        long validUntil = (step + 2) * TIME_STEP_SECONDS * 1000L;
+        if (!mfaStateCache.markUsed(userId, step, validUntil)) {
+            log.warn("Rejected reused TOTP code for userId: {}", userId);
+            return false;
+        }
 
-        boolean valid = validateCode(userMfa.getTotpSecret(), code);
-        if (valid) {
-            userMfa.setEnabled(true);
-            userMfa.setVerifiedAt(LocalDateTime.now());
-            userMfaRepository.save(userMfa);
+        // Solo la primera verificación escribe; los logins posteriores no tocan la BD
+        if (!state.enabled() || state.verifiedAt() == null) {
+            userMfaRepository.findByUserId(userId).ifPresent(userMfa -> {
+                userMfa.setEnabled(true);
+                userMfa.setVerifiedAt(LocalDateTime.now());
+                userMfaRepository.save(userMfa);
+            });
+            invalidate(userId);
         }
-        return valid;
+        return true;
     }
 
     @Override
     @Transactional(readOnly = true)
     public boolean isMfaEnabled(Long userId) {
-        return userMfaRepository.findByUserId(userId)
-                .map(UserMfa::getEnabled)
-                .orElse(false);
+        return loadState(userId).enabled();
     }
 
     @Override
     @Transactional(readOnly = true)
     public MfaStatusResponse getMfaStatus(Long userId) {
-        return userMfaRepository.findByUserId(userId)
-                .map(mfa -> MfaStatusResponse.builder()
-                        .status(mfa.getEnabled())
-                        .verified(mfa.getVerifiedAt() != null)
-                        .lastVerification(mfa.getVerifiedAt())
-                        .build())
-                .orElse(MfaStatusResponse.builder()
-                        .status(false)
-                        .verified(false)
-                        .lastVerification(null)
-                        .build());
+        MfaStateCache.MfaState state = loadState(userId);
+        return MfaStatusResponse.builder()
+                .status(state.enabled())
+                .verified(state.verifiedAt() != null)
+                .lastVerification(state.verifiedAt())
+                .build();
     }
 
     @Override
@@ -98,6 +113,25 @@ public class MfaServiceImpl implements MfaService {
             mfa.setVerifiedAt(null);
             userMfaRepository.save(mfa);
         });
+        invalidate(userId);
+    }
+
+    private MfaStateCache.MfaState loadState(Long userId) {
+        return mfaStateCache.get(userId, () -> userMfaRepository.findByUserId(userId).orElse(null));
+    }
+
+    // Se invalida ya y otra vez al terminar la transacción, para que una lectura concurrente
+    // no deje cacheado el estado anterior al commit
+    private void invalidate(Long userId) {
+        mfaStateCache.evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    mfaStateCache.evict(userId);
+                }
+            });
+        }
     }
 
     private String generateSecret() {
@@ -106,15 +140,16 @@ public class MfaServiceImpl implements MfaService {
         return base32.encodeToString(bytes).replace("=", "");
     }
 
-    private boolean validateCode(String base32Secret, String code) {
+    // Devuelve el paso TOTP con el que coincide el código, o -1 si no coincide con ninguno
+    private long matchStep(String base32Secret, String code) {
         long timeWindow = System.currentTimeMillis() / 1000 / TIME_STEP_SECONDS;
         for (int i = -1; i <= 1; i++) {
             String candidate = generateCode(base32Secret, timeWindow + i);
             if (candidate.equals(code)) {
-                return true;
+                return timeWindow + i;
             }
         }
-        return false;
+        return -1;
     }
 
     private String generateCode(String base32Secret, long timeWindow) {
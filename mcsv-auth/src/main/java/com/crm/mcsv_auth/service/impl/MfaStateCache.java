@@ -0,0 +1,102 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.entity.UserMfa;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Estado MFA por usuario en memoria de la réplica, para no consultar user_mfa en cada login.
+ * Se invalida al configurar o desactivar MFA; el TTL acota cuánto puede tardar en verse un cambio
+ * hecho desde otra réplica. También guarda el último paso TOTP aceptado de cada usuario para
+ * rechazar la reutilización de un código dentro de su ventana de validez.
+ */
+@Slf4j
+@Component
+public class MfaStateCache {
+
+    record MfaState(String totpSecret, boolean enabled, LocalDateTime verifiedAt, long expiresAt) {
+
+        static MfaState of(UserMfa mfa, long expiresAt) {
+            if (mfa == null) {
+                return new MfaState(null, false, null, expiresAt);
+            }
+            return new MfaState(mfa.getTotpSecret(), Boolean.TRUE.equals(mfa.getEnabled()), mfa.getVerifiedAt(), expiresAt);
+        }
+
+        boolean configured() {
+            return totpSecret != null;
+        }
+    }
+
+    private record UsedStep(long step, long expiresAt) {}
+
+    private final Map<Long, MfaState> states = new ConcurrentHashMap<>();
+    private final Map<Long, UsedStep> usedSteps = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    public MfaStateCache(@Value("${mfa.cache.ttl:60s}") Duration ttl,
+                         @Value("${mfa.cache.max-entries:10000}") int maxEntries) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    MfaState get(Long userId, Supplier<UserMfa> loader) {
+        long now = System.currentTimeMillis();
+        MfaState state = states.get(userId);
+        if (state != null && state.expiresAt() > now) {
+            return state;
+        }
+        state = MfaState.of(loader.get(), now + ttlMillis);
+        // Sin sitio no se cachea: se vuelve a leer de BD, nunca se sirve un estado viejo
+        if (states.size() < maxEntries || states.containsKey(userId)) {
+            states.put(userId, state);
+        }
+        return state;
+    }
+
+    void evict(Long userId) {
+        states.remove(userId);
+    }
+
+    // Con un secreto nuevo los pasos usados del anterior dejan de tener sentido
+    void resetUsedSteps(Long userId) {
+        usedSteps.remove(userId);
+    }
+
+    /**
+     * Registra el paso TOTP usado. Devuelve false si ya se aceptó ese paso o uno posterior,
+     * es decir, si el código es una repetición.
+     */
+    boolean markUsed(Long userId, long step, long validUntilMillis) {
+        boolean[] accepted = {false};
+        usedSteps.compute(userId, (id, used) -> {
+            if (used != null && used.step() >= step && used.expiresAt() > System.currentTimeMillis()) {
+                return used;
+            }
+            accepted[0] = true;
+            return new UsedStep(step, validUntilMillis);
+        });
+        return accepted[0];
+    }
+
+    @Scheduled(fixedRate = 60_000)
+    public void expire() {
+        long now = System.currentTimeMillis();
+        states.values().removeIf(state -> state.expiresAt() <= now);
+        int before = usedSteps.size();
+        usedSteps.values().removeIf(used -> used.expiresAt() <= now);
+        int removed = before - usedSteps.size();
+        if (removed > 0) {
+            log.debug("Expired {} used TOTP step(s)", removed);
+        }
+    }
+}
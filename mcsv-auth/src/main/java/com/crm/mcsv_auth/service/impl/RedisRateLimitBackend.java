@@ -0,0 +1,54 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.service.RateLimitBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Limitador compartido entre réplicas de mcsv-auth: ventana deslizante exacta sobre un sorted set
+ * por clave, evaluada de forma atómica con un script Lua. Si Redis no responde se usa el limitador
+ * local para no bloquear el login. El bean lo crea {@link com.crm.mcsv_auth.config.RateLimitConfig}.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class RedisRateLimitBackend implements RateLimitBackend {
+
+    private static final String KEY_PREFIX = "ratelimit:";
+
+    private static final RedisScript<Long> SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>("""
+            local now = tonumber(ARGV[1])
+            local window = tonumber(ARGV[2])
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, now - window)
+            if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[3]) then
+                return 0
+            end
+            redis.call('ZADD', KEYS[1], now, ARGV[4])
+            redis.call('PEXPIRE', KEYS[1], window)
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final LocalRateLimitBackend fallback;
+
+    @Override
+    public boolean tryAcquire(String key, int limit, long windowMillis) {
+        try {
+            Long allowed = redisTemplate.execute(SLIDING_WINDOW_SCRIPT,
+                    List.of(KEY_PREFIX + key),
+                    String.valueOf(System.currentTimeMillis()),
+                    String.valueOf(windowMillis),
+                    String.valueOf(limit),
+                    UUID.randomUUID().toString());
+            return allowed == null || allowed == 1L;
+        } catch (Exception e) {
+            log.warn("Redis rate limiter unavailable, using local limiter: {}", e.getMessage());
+            return fallback.tryAcquire(key, limit, windowMillis);
+        }
+    }
+}
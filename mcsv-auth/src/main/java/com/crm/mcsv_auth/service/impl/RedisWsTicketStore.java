@@ -0,0 +1,34 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.service.WsTicketStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Tickets compartidos entre réplicas: el ticket creado en una réplica puede validarse en otra.
+ * La expiración la resuelve Redis con el TTL de la clave y el consumo usa GETDEL (atómico).
+ */
+@Component
+@ConditionalOnProperty(prefix = "ws-ticket", name = "store", havingValue = "redis")
+@RequiredArgsConstructor
+public class RedisWsTicketStore implements WsTicketStore {
+
+    private static final String KEY_PREFIX = "ws-ticket:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Override
+    public void save(String ticket, Long userId, Duration ttl) {
+        redisTemplate.opsForValue().set(KEY_PREFIX + ticket, userId.toString(), ttl);
+    }
+
+    @Override
+    public Long consume(String ticket) {
+        String userId = redisTemplate.opsForValue().getAndDelete(KEY_PREFIX + ticket);
+        return userId != null ? Long.valueOf(userId) : null;
+    }
+}
@@ -0,0 +1,95 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.common.util.WriteBehindBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Última actividad de las sesiones (last_seen_at y la expiración que se alarga con ella) en
+ * escritura diferida: cada login/refresh solo anota el valor en memoria y un UPDATE por lote
+ * lo persiste cada pocos segundos. Al apagar se vacía lo pendiente.
+ */
+@Component
+@Slf4j
+public class SessionActivityUpdater {
+
+    record Activity(LocalDateTime lastSeenAt, LocalDateTime expiresAt) {
+
+        Activity latest(Activity other) {
+            return other.lastSeenAt().isAfter(lastSeenAt) ? other : this;
+        }
+    }
+
+    // Solo sesiones vivas y sin retroceder nunca las fechas ya guardadas
+    private static final String UPDATE_SQL =
+            "UPDATE user_sessions s SET last_seen_at = GREATEST(s.last_seen_at, v.last_seen_at), " +
+            "expires_at = GREATEST(s.expires_at, v.expires_at) " +
+            "FROM unnest(?::bigint[], ?::timestamp[], ?::timestamp[]) AS v(id, last_seen_at, expires_at) " +
+            "WHERE s.id = v.id AND s.revoked = false";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WriteBehindBuffer<Long, Activity> buffer;
+
+    public SessionActivityUpdater(JdbcTemplate jdbcTemplate,
+                                  ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                  @Value("${session-activity.buffer.capacity:10000}") int capacity,
+                                  @Value("${session-activity.buffer.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.buffer = new WriteBehindBuffer<>("session-activity", capacity, batchSize,
+                Activity::latest,
+                this::write,
+                meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public void touch(Long sessionId, LocalDateTime lastSeenAt, LocalDateTime expiresAt) {
+        try {
+            buffer.put(sessionId, new Activity(lastSeenAt, expiresAt));
+        } catch (Exception e) {
+            log.warn("Failed to record activity of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${session-activity.buffer.flush-interval-ms:5000}")
+    public void flush() {
+        int written = buffer.flush();
+        if (written > 0) {
+            log.debug("Flushed activity of {} session(s)", written);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void write(Map<Long, Activity> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        List<Timestamp> lastSeen = new ArrayList<>(batch.size());
+        List<Timestamp> expires = new ArrayList<>(batch.size());
+        batch.forEach((id, activity) -> {
+            ids.add(id);
+            lastSeen.add(Timestamp.valueOf(activity.lastSeenAt()));
+            expires.add(Timestamp.valueOf(activity.expiresAt()));
+        });
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement(UPDATE_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            ps.setArray(2, connection.createArrayOf("timestamp", lastSeen.toArray()));
+            ps.setArray(3, connection.createArrayOf("timestamp", expires.toArray()));
+            return ps;
+        });
+    }
+}
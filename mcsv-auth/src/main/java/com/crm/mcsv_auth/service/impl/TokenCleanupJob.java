@@ -0,0 +1,54 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.repository.UserSessionRepository;
+import com.crm.mcsv_auth.service.TokenService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Purga periódica de refresh tokens caducados y de sesiones caducadas o revocadas sin tokens.
+ * Se borra por lotes pequeños, cada uno en su transacción, para no mantener locks largos ni
+ * generar un único DELETE masivo; varias réplicas pueden ejecutarla a la vez (SKIP LOCKED).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TokenCleanupJob {
+
+    private final TokenService tokenService;
+    private final UserSessionRepository userSessionRepository;
+
+    @Value("${token-cleanup.batch-size:1000}")
+    private int batchSize;
+
+    // Se conservan un tiempo tras caducar para poder detectar la reutilización de tokens rotados
+    @Value("${token-cleanup.retention:1d}")
+    private Duration retention;
+
+    @Scheduled(cron = "${token-cleanup.cron:0 */15 * * * *}")
+    public void purge() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        try {
+            int tokens = tokenService.deleteExpiredTokens(cutoff, batchSize);
+
+            int sessions = 0;
+            int deleted;
+            do {
+                deleted = userSessionRepository.purgeInactive(cutoff, batchSize);
+                sessions += deleted;
+            } while (deleted == batchSize);
+
+            if (tokens > 0 || sessions > 0) {
+                log.info("Purged {} refresh token(s) and {} session(s) older than {}", tokens, sessions, cutoff);
+            }
+        } catch (Exception e) {
+            log.warn("Token cleanup failed: {}", e.getMessage());
+        }
+    }
+}
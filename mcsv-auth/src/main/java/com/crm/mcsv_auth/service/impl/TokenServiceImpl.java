@@ -1,16 +1,20 @@
 package com.crm.mcsv_auth.service.impl;
 
 import com.crm.mcsv_auth.entity.RefreshToken;
+import com.crm.mcsv_auth.event.SessionRevokedEvent;
 import com.crm.mcsv_auth.exception.TokenException;
 import com.crm.mcsv_auth.repository.RefreshTokenRepository;
 import com.crm.mcsv_auth.repository.UserSessionRepository;
 import com.crm.mcsv_auth.service.TokenService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -25,14 +29,33 @@ public class TokenServiceImpl implements TokenService {
 
     private final RefreshTokenRepository refreshTokenRepository;
     private final UserSessionRepository userSessionRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     private static final long REFRESH_TOKEN_EXPIRY_DAYS = 7;
 
+    // Margen para peticiones concurrentes del mismo cliente con el token recién rotado
+    @Value("${auth.refresh-token.reuse-grace:10s}")
+    private Duration reuseGrace;
+
     @Override
     @Transactional
     public RefreshToken createRefreshToken(Long userId, Long sessionId) {
         log.info("Creating refresh token for userId: {}", userId);
+        return issue(userId, sessionId, UUID.randomUUID().toString());
+    }
+
+    @Override
+    @Transactional
+    public RefreshToken rotateRefreshToken(RefreshToken current, Long sessionId) {
+        // UPDATE condicional: si otra petición ya rotó este token no se emite uno nuevo
+        if (refreshTokenRepository.revokeIfActive(current.getId(), LocalDateTime.now()) == 0) {
+            throw new TokenException("Refresh token has already been used");
+        }
+        String familyId = current.getFamilyId() != null ? current.getFamilyId() : UUID.randomUUID().toString();
+        return issue(current.getUserId(), sessionId, familyId);
+    }
 
+    private RefreshToken issue(Long userId, Long sessionId, String familyId) {
         String plainToken = UUID.randomUUID().toString();
         String token = hashToken(plainToken);
         LocalDateTime expiresAt = LocalDateTime.now().plusDays(REFRESH_TOKEN_EXPIRY_DAYS);
@@ -41,6 +64,7 @@ public class TokenServiceImpl implements TokenService {
                 .token(token)
                 .userId(userId)
                 .sessionId(sessionId)
+                .familyId(familyId)
                 .expiresAt(expiresAt)
                 .revoked(false)
                 .build();
@@ -50,8 +74,10 @@ public class TokenServiceImpl implements TokenService {
         return saved;
     }
 
+    // Lectura-escritura y sin rollback por TokenException: la revocación de una familia reutilizada
+    // se hace con la misma conexión y se confirma aunque después se rechace el token
     @Override
-    @Transactional(readOnly = true)
+    @Transactional(noRollbackFor = TokenException.class)
     public RefreshToken validateRefreshToken(String token) {
         log.info("Validating refresh token");
 
@@ -59,6 +85,9 @@ public class TokenServiceImpl implements TokenService {
                 .orElseThrow(() -> new TokenException("Invalid refresh token"));
 
         if (refreshToken.getRevoked()) {
+            if (isReplay(refreshToken)) {
+                revokeFamily(refreshToken);
+            }
             throw new TokenException("Refresh token has been revoked");
         }
 
@@ -89,9 +118,7 @@ public class TokenServiceImpl implements TokenService {
         RefreshToken refreshToken = refreshTokenRepository.findByToken(hashToken(token))
                 .orElseThrow(() -> new TokenException("Refresh token not found"));
 
-        refreshToken.setRevoked(true);
-        refreshToken.setRevokedAt(LocalDateTime.now());
-        refreshTokenRepository.save(refreshToken);
+        refreshTokenRepository.revokeIfActive(refreshToken.getId(), LocalDateTime.now());
     }
 
     @Override
@@ -99,17 +126,11 @@ public class TokenServiceImpl implements TokenService {
     public void revokeAllUserTokens(Long userId) {
         log.info("Revoking all tokens for user ID: {}", userId);
 
-        List<RefreshToken> userTokens = refreshTokenRepository.findByUserId(userId);
-        LocalDateTime now = LocalDateTime.now();
-
-        for (RefreshToken token : userTokens) {
-            if (!token.getRevoked()) {
-                token.setRevoked(true);
-                token.setRevokedAt(now);
-            }
-        }
-
-        refreshTokenRepository.saveAll(userTokens);
+        // Los sids se leen antes de revocar las sesiones: el gateway solo puede rechazar por sid
+        List<Long> sessionIds = userSessionRepository.findUnrevokedIdsByUserId(userId);
+        int revoked = refreshTokenRepository.revokeActiveByUserId(userId, LocalDateTime.now());
+        log.debug("Revoked {} refresh token(s) and {} session(s) for user ID: {}", revoked, sessionIds.size(), userId);
+        eventPublisher.publishEvent(SessionRevokedEvent.allSessions(userId, sessionIds));
     }
 
     @Override
@@ -119,25 +140,42 @@ public class TokenServiceImpl implements TokenService {
             return;
         }
 
-        List<RefreshToken> sessionTokens = refreshTokenRepository.findBySessionIdAndRevokedFalse(sessionId);
-        if (sessionTokens.isEmpty()) {
+        if (refreshTokenRepository.revokeActiveBySessionId(sessionId, LocalDateTime.now()) == 0) {
             return;
         }
 
-        LocalDateTime now = LocalDateTime.now();
-        for (RefreshToken token : sessionTokens) {
-            token.setRevoked(true);
-            token.setRevokedAt(now);
-        }
-
-        refreshTokenRepository.saveAll(sessionTokens);
+        userSessionRepository.findById(sessionId).ifPresent(session ->
+                eventPublisher.publishEvent(SessionRevokedEvent.session(session.getUserId(), sessionId)));
     }
 
     @Override
-    @Transactional
-    public void deleteExpiredTokens() {
-        log.info("Deleting expired refresh tokens");
-        refreshTokenRepository.deleteByExpiresAtBeforeAndRevokedFalse(LocalDateTime.now());
+    public int deleteExpiredTokens(LocalDateTime cutoff, int batchSize) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = refreshTokenRepository.purgeExpired(cutoff, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        return total;
+    }
+
+    // Un token ya rotado que vuelve fuera del margen indica que la familia está comprometida
+    private boolean isReplay(RefreshToken refreshToken) {
+        return refreshToken.getFamilyId() != null
+                && refreshToken.getRevokedAt() != null
+                && refreshToken.getRevokedAt().isBefore(LocalDateTime.now().minus(reuseGrace));
+    }
+
+    private void revokeFamily(RefreshToken refreshToken) {
+        LocalDateTime now = LocalDateTime.now();
+        int revoked = refreshTokenRepository.revokeActiveByFamily(refreshToken.getFamilyId(), now);
+        if (refreshToken.getSessionId() != null) {
+            userSessionRepository.revokeByIds(List.of(refreshToken.getSessionId()), now);
+            eventPublisher.publishEvent(
+                    SessionRevokedEvent.session(refreshToken.getUserId(), refreshToken.getSessionId()));
+        }
+        log.warn("Refresh token reuse detected for user ID: {}; revoked {} token(s) of the family",
+                refreshToken.getUserId(), revoked);
     }
 
     private String hashToken(String token) {
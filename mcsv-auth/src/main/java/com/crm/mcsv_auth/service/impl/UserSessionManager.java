@@ -2,23 +2,21 @@ package com.crm.mcsv_auth.service.impl;
 
 import com.crm.mcsv_auth.dto.UserSessionDto;
 import com.crm.mcsv_auth.entity.UserSession;
+import com.crm.mcsv_auth.event.SessionRevokedEvent;
 import com.crm.mcsv_auth.exception.AuthenticationException;
 import com.crm.mcsv_auth.repository.UserSessionRepository;
+import com.crm.mcsv_auth.util.SessionKeys;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Base64;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
 
 @Component
 @RequiredArgsConstructor
@@ -29,15 +27,13 @@ public class UserSessionManager {
     private static final long SESSION_EXPIRY_DAYS = 7;
 
     private final UserSessionRepository userSessionRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SessionActivityUpdater sessionActivityUpdater;
 
     @Transactional
     public UserSession registerSession(Long userId, String ipAddress, String userAgent, String deviceId) {
-        List<UserSession> activeSessions = findActiveSessions(userId);
-        Set<String> currentKeys = resolveCandidateKeys(deviceId, ipAddress, userAgent);
-
-        List<UserSession> matchingSessions = activeSessions.stream()
-                .filter(session -> matches(session, currentKeys))
-                .toList();
+        List<UserSession> matchingSessions = findMatching(userId, SessionKeys.deviceKey(deviceId),
+                SessionKeys.fingerprint(ipAddress, userAgent));
 
         if (matchingSessions.isEmpty()) {
             return userSessionRepository.save(UserSession.builder()
@@ -52,7 +48,7 @@ public class UserSessionManager {
         UserSession primary = matchingSessions.getFirst();
         UserSession saved = touch(primary, ipAddress, userAgent, deviceId);
 
-        revokeDuplicates(matchingSessions, saved.getId());
+        revokeDuplicates(userId, matchingSessions, saved.getId());
         return saved;
     }
 
@@ -75,36 +71,29 @@ public class UserSessionManager {
         UserSession selected = userSessionRepository.findByIdAndUserIdAndRevokedFalse(sessionId, userId)
                 .orElseThrow(() -> new AuthenticationException("Session not found"));
 
-        List<UserSession> activeSessions = findActiveSessions(userId);
-        Set<String> keys = resolveCandidateKeys(selected.getDeviceId(), selected.getIpAddress(), selected.getUserAgent());
-
-        List<UserSession> matchingSessions = activeSessions.stream()
-                .filter(session -> matches(session, keys))
-                .toList();
+        List<UserSession> matchingSessions = findMatching(userId, deviceKeyOf(selected), fingerprintOf(selected));
 
         if (matchingSessions.isEmpty()) {
             revoke(selected);
             return;
         }
 
-        matchingSessions.forEach(this::revoke);
+        revokeAll(userId, matchingSessions);
     }
 
     @Transactional
     public void revokeCurrentSession(Long userId, String ipAddress, String userAgent, String deviceId) {
-        List<UserSession> activeSessions = findActiveSessions(userId);
-        Set<String> keys = resolveCandidateKeys(deviceId, ipAddress, userAgent);
-
-        List<UserSession> matchingSessions = activeSessions.stream()
-                .filter(session -> matches(session, keys))
-                .toList();
+        List<UserSession> matchingSessions = findMatching(userId, SessionKeys.deviceKey(deviceId),
+                SessionKeys.fingerprint(ipAddress, userAgent));
 
         if (matchingSessions.isEmpty()) {
-            activeSessions.stream().findFirst().ifPresent(this::revoke);
+            userSessionRepository
+                    .findFirstByUserIdAndRevokedFalseAndExpiresAtAfterOrderByLastSeenAtDescCreatedAtDesc(userId, LocalDateTime.now())
+                    .ifPresent(this::revoke);
             return;
         }
 
-        matchingSessions.forEach(this::revoke);
+        revokeAll(userId, matchingSessions);
     }
 
     @Transactional
@@ -151,28 +140,39 @@ public class UserSessionManager {
         return !session.isExpired();
     }
 
-    private void revokeDuplicates(List<UserSession> sessions, Long keepId) {
-        List<UserSession> duplicates = new ArrayList<>();
-        for (UserSession session : sessions) {
-            if (!session.getId().equals(keepId)) {
-                revoke(session);
-                duplicates.add(session);
-            }
-        }
+    private void revokeDuplicates(Long userId, List<UserSession> sessions, Long keepId) {
+        List<UserSession> duplicates = sessions.stream()
+                .filter(session -> !session.getId().equals(keepId))
+                .toList();
 
         if (!duplicates.isEmpty()) {
-            userSessionRepository.saveAll(duplicates);
+            revokeAll(userId, duplicates);
             log.info("Revoked {} duplicated session(s) while refreshing active session state", duplicates.size());
         }
     }
 
+    // Un único UPDATE y un único evento para todo el grupo
+    private void revokeAll(Long userId, List<UserSession> sessions) {
+        List<Long> ids = sessions.stream().map(UserSession::getId).toList();
+        userSessionRepository.revokeByIds(ids, LocalDateTime.now());
+        eventPublisher.publishEvent(new SessionRevokedEvent(userId, ids));
+    }
+
     private void revoke(UserSession session) {
         session.setRevoked(true);
         session.setRevokedAt(LocalDateTime.now());
         userSessionRepository.save(session);
+        eventPublisher.publishEvent(SessionRevokedEvent.session(session.getUserId(), session.getId()));
     }
 
     private UserSession touch(UserSession session, String ipAddress, String userAgent, String deviceId) {
+        // Mismo dispositivo y origen: solo cambia la actividad, que se escribe en diferido. No se toca
+        // la entidad gestionada para que el dirty checking no genere el UPDATE al hacer commit.
+        if (sameClient(session, ipAddress, userAgent, deviceId)) {
+            sessionActivityUpdater.touch(session.getId(), LocalDateTime.now(), resolveNextExpiry());
+            return session;
+        }
+
         session.setIpAddress(ipAddress);
         session.setUserAgent(userAgent);
         if (!isBlank(deviceId)) {
@@ -183,42 +183,31 @@ public class UserSessionManager {
         return userSessionRepository.save(session);
     }
 
-    private boolean matches(UserSession session, Set<String> candidateKeys) {
-        return candidateKeys.contains(resolveDeviceKey(session.getDeviceId()))
-                || candidateKeys.contains(resolveFingerprintKey(session.getIpAddress(), session.getUserAgent()));
+    private boolean sameClient(UserSession session, String ipAddress, String userAgent, String deviceId) {
+        return Objects.equals(session.getIpAddress(), ipAddress)
+                && Objects.equals(session.getUserAgent(), userAgent)
+                && (isBlank(deviceId) || deviceId.trim().equals(session.getDeviceId()));
     }
 
-    private Set<String> resolveCandidateKeys(String deviceId, String ipAddress, String userAgent) {
-        Set<String> keys = new LinkedHashSet<>();
-        if (!isBlank(deviceId)) {
-            keys.add(resolveDeviceKey(deviceId));
-        }
-        keys.add(resolveFingerprintKey(ipAddress, userAgent));
-        return keys;
+    private List<UserSession> findMatching(Long userId, String deviceKey, String fingerprint) {
+        return userSessionRepository.findActiveMatching(userId, deviceKey == null ? "" : deviceKey, fingerprint,
+                LocalDateTime.now());
     }
 
     private String resolveDisplayKey(UserSession session) {
-        return !isBlank(session.getDeviceId())
-                ? resolveDeviceKey(session.getDeviceId())
-                : resolveFingerprintKey(session.getIpAddress(), session.getUserAgent());
+        String deviceKey = deviceKeyOf(session);
+        return deviceKey != null ? "device:" + deviceKey : "fingerprint:" + fingerprintOf(session);
     }
 
-    private String resolveDeviceKey(String deviceId) {
-        return isBlank(deviceId) ? "" : "device:" + deviceId.trim().toLowerCase();
+    // Las claves se guardan al escribir; solo se recalculan para filas antiguas aún sin rellenar
+    private String deviceKeyOf(UserSession session) {
+        return session.getDeviceKey() != null ? session.getDeviceKey() : SessionKeys.deviceKey(session.getDeviceId());
     }
 
-    private String resolveFingerprintKey(String ipAddress, String userAgent) {
-        String normalizedIp = normalize(ipAddress);
-        String normalizedAgent = normalize(userAgent);
-        String raw = normalizedIp + "|" + normalizedAgent;
-
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashed = digest.digest(raw.getBytes(StandardCharsets.UTF_8));
-            return "fingerprint:" + Base64.getUrlEncoder().withoutPadding().encodeToString(hashed);
-        } catch (Exception e) {
-            return "fingerprint:" + raw;
-        }
+    private String fingerprintOf(UserSession session) {
+        return session.getFingerprintHash() != null
+                ? session.getFingerprintHash()
+                : SessionKeys.fingerprint(session.getIpAddress(), session.getUserAgent());
     }
 
     private String normalize(String value) {
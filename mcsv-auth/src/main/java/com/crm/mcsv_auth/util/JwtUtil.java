@@ -2,6 +2,9 @@ package com.crm.mcsv_auth.util;
 
 import com.crm.mcsv_auth.config.JwtConfig;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import lombok.RequiredArgsConstructor;
@@ -23,19 +26,50 @@ import java.util.function.Function;
 @Slf4j
 public class JwtUtil {
 
+    public static final String SESSION_ID_CLAIM = "sid";
+
     private final JwtConfig jwtConfig;
 
+    // Clave y parser inmutables/thread-safe: se construyen una sola vez
+    private volatile SecretKey signingKey;
+    private volatile JwtParser jwtParser;
+
     private SecretKey getSigningKey() {
-        byte[] keyBytes = jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+        SecretKey key = signingKey;
+        if (key == null) {
+            key = Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
+            signingKey = key;
+        }
+        return key;
+    }
+
+    private JwtParser getParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            parser = Jwts.parser().verifyWith(getSigningKey()).build();
+            jwtParser = parser;
+        }
+        return parser;
     }
 
     public String generateAccessToken(Long userId, String username, Set<String> roles, Set<String> permissions) {
+        return generateAccessToken(userId, username, roles, permissions, null);
+    }
+
+    /**
+     * Incluye el id de la sesión en el claim {@code sid} para que el gateway pueda rechazar
+     * access tokens de sesiones revocadas sin consultar a mcsv-auth.
+     */
+    public String generateAccessToken(Long userId, String username, Set<String> roles, Set<String> permissions,
+                                      Long sessionId) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
         claims.put("username", username);
         claims.put("roles", roles);
         claims.put("permissions", permissions);
+        if (sessionId != null) {
+            claims.put(SESSION_ID_CLAIM, sessionId.toString());
+        }
 
         return createToken(claims, username);
     }
@@ -53,31 +87,60 @@ public class JwtUtil {
                 .compact();
     }
 
+    /**
+     * Verifica firma y expiración y devuelve los claims. Lanza {@link JwtException} si el token no es válido.
+     * Usar este método y los extract*(Claims) cuando se necesita más de un dato del mismo token.
+     */
+    public Claims parseClaims(String token) {
+        return getParser().parseSignedClaims(token).getPayload();
+    }
+
+    /**
+     * Igual que {@link #parseClaims(String)} pero devuelve {@code null} si el token no es válido,
+     * sin registrar la traza completa (tokens caducados o manipulados son habituales).
+     */
+    public Claims parseValidClaims(String token) {
+        try {
+            return parseClaims(token);
+        } catch (ExpiredJwtException e) {
+            log.debug("Token expired");
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Invalid token: {}", e.getMessage());
+        }
+        return null;
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
 
     public Long extractUserId(String token) {
-        Claims claims = extractAllClaims(token);
+        return extractUserId(parseClaims(token));
+    }
+
+    public Long extractUserId(Claims claims) {
         return claims.get("userId", Long.class);
     }
 
+    public Long extractSessionId(String token) {
+        return extractSessionId(parseClaims(token));
+    }
+
+    public Long extractSessionId(Claims claims) {
+        String sid = claims.get(SESSION_ID_CLAIM, String.class);
+        return sid != null ? Long.valueOf(sid) : null;
+    }
+
     public Set<String> extractRoles(String token) {
-        Claims claims = extractAllClaims(token);
-        Object roles = claims.get("roles");
-        if (roles instanceof List) {
-            return new HashSet<>((List<String>) roles);
-        }
-        return new HashSet<>();
+        return toStringSet(parseClaims(token).get("roles"));
     }
 
     public Set<String> extractPermissions(String token) {
-        Claims claims = extractAllClaims(token);
-        Object permissions = claims.get("permissions");
-        if (permissions instanceof List) {
-            return new HashSet<>((List<String>) permissions);
-        }
-        return new HashSet<>();
+        return toStringSet(parseClaims(token).get("permissions"));
+    }
+
+    public Set<String> extractPermissions(Claims claims) {
+        return toStringSet(claims.get("permissions"));
     }
 
     public Date extractExpiration(String token) {
@@ -85,21 +148,22 @@ public class JwtUtil {
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        return claimsResolver.apply(parseClaims(token));
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    @SuppressWarnings("unchecked")
+    private Set<String> toStringSet(Object value) {
+        if (value instanceof List) {
+            return new HashSet<>((List<String>) value);
+        }
+        return new HashSet<>();
     }
 
     public Boolean isTokenExpired(String token) {
         try {
             return extractExpiration(token).before(new Date());
+        } catch (ExpiredJwtException e) {
+            return true;
         } catch (Exception e) {
             log.error("Error checking if token is expired", e);
             return true;
@@ -107,22 +171,12 @@ public class JwtUtil {
     }
 
     public Boolean validateToken(String token, String username) {
-        try {
-            final String extractedUsername = extractUsername(token);
-            return (extractedUsername.equals(username) && !isTokenExpired(token));
-        } catch (Exception e) {
-            log.error("Error validating token", e);
-            return false;
-        }
+        // El parser ya rechaza tokens expirados: una sola verificación
+        Claims claims = parseValidClaims(token);
+        return claims != null && username != null && username.equals(claims.getSubject());
     }
 
     public Boolean validateToken(String token) {
-        try {
-            extractAllClaims(token);
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            log.error("Error validating token", e);
-            return false;
-        }
+        return parseValidClaims(token) != null;
     }
 }
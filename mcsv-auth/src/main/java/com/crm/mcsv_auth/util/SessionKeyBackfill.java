@@ -0,0 +1,32 @@
+package com.crm.mcsv_auth.util;
+
+import com.crm.mcsv_auth.repository.UserSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Calcula device_key / fingerprint_hash de las sesiones activas que se crearon antes de que
+ * existieran esas columnas (el esquema se gestiona con ddl-auto, sin migraciones).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SessionKeyBackfill implements CommandLineRunner {
+
+    private final UserSessionRepository userSessionRepository;
+
+    // Sin @Transactional aquí: el UPDATE lleva su propia transacción y un fallo solo se registra
+    @Override
+    public void run(String... args) {
+        try {
+            int updated = userSessionRepository.backfillMatchKeys();
+            if (updated > 0) {
+                log.info("Backfilled match keys for {} active sessions", updated);
+            }
+        } catch (Exception e) {
+            log.warn("Could not backfill session match keys: {}", e.getMessage());
+        }
+    }
+}
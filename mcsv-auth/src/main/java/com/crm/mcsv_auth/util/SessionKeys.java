@@ -0,0 +1,41 @@
+package com.crm.mcsv_auth.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Claves con las que se agrupan las sesiones de un mismo dispositivo: el deviceId normalizado y
+ * el SHA-256 (hex) de ip|userAgent. Se guardan en columnas indexadas de user_sessions al escribir
+ * la sesión, así la búsqueda de coincidencias es una consulta y no un recorrido con hashing.
+ */
+public final class SessionKeys {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private SessionKeys() {}
+
+    /** deviceId en minúsculas y sin espacios, o null si no hay. */
+    public static String deviceKey(String deviceId) {
+        return deviceId == null || deviceId.isBlank() ? null : deviceId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static String fingerprint(String ipAddress, String userAgent) {
+        String raw = normalize(ipAddress) + "|" + normalize(userAgent);
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        return HexFormat.of().formatHex(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim();
+    }
+}
@@ -0,0 +1,113 @@
+package com.crm.mcsv_auth.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("LocalRateLimitBackend Tests")
+class LocalRateLimitBackendTest {
+
+    private static final String KEY = "login:10.0.0.1";
+    private static final int LIMIT = 5;
+    private static final long WINDOW = 1_000;
+    // Inicio de una ventana: los instantes de los tests son relativos a él
+    private static final long T0 = 100 * WINDOW;
+
+    private LocalRateLimitBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        backend = new LocalRateLimitBackend(100_000);
+    }
+
+    private int acquire(int attempts, long now) {
+        int allowed = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (backend.tryAcquire(KEY, LIMIT, WINDOW, now)) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    // ---------------------------------------------------------------
+    // tryAcquire
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("tryAcquire()")
+    class TryAcquire {
+
+        @Test
+        @DisplayName("allows up to the limit inside one window and rejects the rest")
+        void limitWithinWindow() {
+            assertThat(acquire(LIMIT + 3, T0 + 100)).isEqualTo(LIMIT);
+        }
+
+        @Test
+        @DisplayName("keys are limited independently")
+        void independentKeys() {
+            acquire(LIMIT, T0);
+
+            assertThat(backend.tryAcquire("login:10.0.0.2", LIMIT, WINDOW, T0)).isTrue();
+        }
+
+        @Test
+        @DisplayName("window edge: a full previous window still counts, so there is no 2x burst")
+        void noBurstAtWindowEdge() {
+            assertThat(acquire(LIMIT, T0 + WINDOW - 1)).isEqualTo(LIMIT);
+
+            assertThat(acquire(LIMIT, T0 + WINDOW)).isZero();
+        }
+
+        @Test
+        @DisplayName("mid next window: the previous window weighs by its remaining overlap")
+        void previousWindowWeighted() {
+            acquire(LIMIT, T0 + 900);
+
+            // A 600ms de la ventana nueva la anterior pesa 0.4: 5 * 0.4 = 2, quedan 3
+            assertThat(acquire(LIMIT, T0 + WINDOW + 600)).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("after a whole idle window the previous count no longer applies")
+        void idleWindowResets() {
+            acquire(LIMIT, T0 + 500);
+
+            assertThat(acquire(LIMIT, T0 + 2 * WINDOW)).isEqualTo(LIMIT);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // eviction
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("eviction")
+    class Eviction {
+
+        @Test
+        @DisplayName("evictIdle drops keys idle for more than one window and keeps the rest")
+        void evictIdle() {
+            backend.tryAcquire("a", LIMIT, WINDOW, T0);
+            backend.tryAcquire("b", LIMIT, WINDOW, T0 + WINDOW);
+
+            backend.evictIdle(T0 + 2 * WINDOW);
+
+            assertThat(backend.size()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("tracked keys are capped by max-keys")
+        void boundedKeys() {
+            LocalRateLimitBackend small = new LocalRateLimitBackend(0);
+            for (int i = 0; i < 10_000; i++) {
+                small.tryAcquire("login:" + i, LIMIT, WINDOW, T0);
+            }
+
+            // Mínimo de 16 claves por segmento, 64 segmentos
+            assertThat(small.size()).isLessThanOrEqualTo(64 * 16);
+        }
+    }
+}
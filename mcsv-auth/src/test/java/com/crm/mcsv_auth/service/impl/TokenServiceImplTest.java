@@ -0,0 +1,147 @@
+package com.crm.mcsv_auth.service.impl;
+
+import com.crm.mcsv_auth.entity.RefreshToken;
+import com.crm.mcsv_auth.entity.UserSession;
+import com.crm.mcsv_auth.event.SessionRevokedEvent;
+import com.crm.mcsv_auth.exception.TokenException;
+import com.crm.mcsv_auth.repository.RefreshTokenRepository;
+import com.crm.mcsv_auth.repository.UserSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TokenServiceImpl Tests")
+class TokenServiceImplTest {
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private UserSessionRepository userSessionRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private TokenServiceImpl service;
+
+    private static final Long USER_ID = 7L;
+    private static final Long SESSION_ID = 70L;
+    private static final String FAMILY_ID = "family-1";
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "reuseGrace", Duration.ofSeconds(10));
+    }
+
+    private RefreshToken token(boolean revoked, LocalDateTime revokedAt) {
+        return RefreshToken.builder()
+                .id(1L)
+                .token("hashed")
+                .userId(USER_ID)
+                .sessionId(SESSION_ID)
+                .familyId(FAMILY_ID)
+                .expiresAt(LocalDateTime.now().plusDays(1))
+                .revoked(revoked)
+                .revokedAt(revokedAt)
+                .build();
+    }
+
+    // ---------------------------------------------------------------
+    // validateRefreshToken
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("validateRefreshToken()")
+    class ValidateRefreshToken {
+
+        @Test
+        @DisplayName("reused rotated token: revokes family and session, then rejects")
+        void reuse_revokesFamily() {
+            when(refreshTokenRepository.findByToken(anyString()))
+                    .thenReturn(Optional.of(token(true, LocalDateTime.now().minusMinutes(5))));
+            when(refreshTokenRepository.revokeActiveByFamily(eq(FAMILY_ID), any())).thenReturn(2);
+
+            assertThatThrownBy(() -> service.validateRefreshToken("plain"))
+                    .isInstanceOf(TokenException.class)
+                    .hasMessageContaining("revoked");
+
+            verify(refreshTokenRepository).revokeActiveByFamily(eq(FAMILY_ID), any(LocalDateTime.class));
+            verify(userSessionRepository).revokeByIds(eq(List.of(SESSION_ID)), any(LocalDateTime.class));
+            verify(eventPublisher).publishEvent(SessionRevokedEvent.session(USER_ID, SESSION_ID));
+        }
+
+        @Test
+        @DisplayName("token rotated within the grace window: rejects without revoking the family")
+        void withinGrace_doesNotRevoke() {
+            when(refreshTokenRepository.findByToken(anyString()))
+                    .thenReturn(Optional.of(token(true, LocalDateTime.now().minusSeconds(2))));
+
+            assertThatThrownBy(() -> service.validateRefreshToken("plain"))
+                    .isInstanceOf(TokenException.class);
+
+            verify(refreshTokenRepository, never()).revokeActiveByFamily(any(), any());
+            verifyNoInteractions(userSessionRepository, eventPublisher);
+        }
+
+        @Test
+        @DisplayName("active token with active session: returns it")
+        void active_returnsToken() {
+            RefreshToken active = token(false, null);
+            when(refreshTokenRepository.findByToken(anyString())).thenReturn(Optional.of(active));
+            when(userSessionRepository.findByIdAndUserIdAndRevokedFalseAndExpiresAtAfter(
+                    eq(SESSION_ID), eq(USER_ID), any())).thenReturn(Optional.of(new UserSession()));
+
+            assertThat(service.validateRefreshToken("plain")).isSameAs(active);
+            verify(refreshTokenRepository, never()).revokeActiveByFamily(any(), any());
+        }
+
+        @Test
+        @DisplayName("revocation commits in the caller's transaction despite the TokenException")
+        void transactional_noRollbackForTokenException() throws NoSuchMethodException {
+            Transactional tx = TokenServiceImpl.class
+                    .getMethod("validateRefreshToken", String.class)
+                    .getAnnotation(Transactional.class);
+
+            assertThat(tx).isNotNull();
+            assertThat(tx.readOnly()).isFalse();
+            assertThat(tx.noRollbackFor()).contains(TokenException.class);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // revokeAllUserTokens
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("revokeAllUserTokens()")
+    class RevokeAllUserTokens {
+
+        @Test
+        @DisplayName("publishes every unrevoked sid so the gateways can reject them")
+        void publishesSessionIds() {
+            when(userSessionRepository.findUnrevokedIdsByUserId(USER_ID)).thenReturn(List.of(SESSION_ID, 71L));
+
+            service.revokeAllUserTokens(USER_ID);
+
+            verify(refreshTokenRepository).revokeActiveByUserId(eq(USER_ID), any(LocalDateTime.class));
+            verify(eventPublisher).publishEvent(SessionRevokedEvent.allSessions(USER_ID, List.of(SESSION_ID, 71L)));
+        }
+    }
+}
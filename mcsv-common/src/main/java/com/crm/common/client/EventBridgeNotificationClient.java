@@ -3,50 +3,97 @@ package com.crm.common.client;
 import com.crm.common.dto.SendNotificationRequest;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
-import software.amazon.awssdk.services.eventbridge.EventBridgeClient;
+import software.amazon.awssdk.services.eventbridge.EventBridgeAsyncClient;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsRequest;
 import software.amazon.awssdk.services.eventbridge.model.PutEventsRequestEntry;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsResponse;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsResultEntry;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Publica notificaciones en EventBridge. Los lotes se parten respetando los límites de PutEvents
+ * (10 entradas y 256KB) y se envían en paralelo con el cliente asíncrono, con un máximo de
+ * peticiones en vuelo. Las entradas rechazadas se reintentan con backoff (salvo en {@link #publishNow}).
+ */
 @Component
 @ConditionalOnProperty(name = "aws.eventbridge.enabled", havingValue = "true")
 @Slf4j
 public class EventBridgeNotificationClient {
 
     private static final int MAX_ENTRIES_PER_REQUEST = 10;
+    private static final int MAX_REQUEST_BYTES = 256 * 1024;
+    // EventBridge suma 14 bytes por entrada en concepto de Time
+    private static final int ENTRY_OVERHEAD_BYTES = 14;
+    private static final String SOURCE = "crm.notification";
+    private static final String DETAIL_TYPE = "SendNotification";
+    // Errores de entrada que no mejoran reintentando
+    private static final Set<String> PERMANENT_ERRORS = Set.of("MalformedDetail", "InvalidArgument", "ValidationException");
 
-    private final EventBridgeClient eventBridgeClient;
+    private record Entry(SendNotificationRequest request, PutEventsRequestEntry entry, int bytes) {
+    }
+
+    private record ChunkResult(List<Entry> retry, List<Entry> failed) {
+    }
+
+    private final EventBridgeAsyncClient eventBridgeClient;
     private final ObjectMapper objectMapper;
     private final String eventBusName;
+    private final Semaphore inFlight;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+
+    private final Timer putTimer;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
 
     public EventBridgeNotificationClient(
-            EventBridgeClient eventBridgeClient,
+            EventBridgeAsyncClient eventBridgeClient,
             ObjectMapper objectMapper,
-            @Value("${aws.eventbridge.bus-name:crm-events}") String eventBusName) {
+            ObjectProvider<MeterRegistry> meterRegistryProvider,
+            @Value("${aws.eventbridge.bus-name:crm-events}") String eventBusName,
+            @Value("${aws.eventbridge.batch.max-concurrency:8}") int maxConcurrency,
+            @Value("${aws.eventbridge.batch.max-attempts:3}") int maxAttempts,
+            @Value("${aws.eventbridge.batch.retry-backoff:200ms}") Duration retryBackoff) {
         this.eventBridgeClient = eventBridgeClient;
         this.objectMapper = objectMapper;
         this.eventBusName = eventBusName;
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        this.putTimer = Timer.builder("notification.eventbridge.put")
+                .description("Duration of PutEvents calls")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.sentCounter = Counter.builder("notification.eventbridge.entries").tag("result", "sent").register(registry);
+        this.retriedCounter = Counter.builder("notification.eventbridge.entries").tag("result", "retried").register(registry);
+        this.failedCounter = Counter.builder("notification.eventbridge.entries").tag("result", "failed").register(registry);
     }
 
     @Async("notificationExecutor")
     public void send(SendNotificationRequest request) {
-        try {
-            eventBridgeClient.putEvents(PutEventsRequest.builder()
-                    .entries(toEntry(request))
-                    .build());
-
+        if (publish(List.of(request)).isEmpty()) {
             log.info("Notification event published to EventBridge for userId: {}", request.getUserId());
-        } catch (JsonProcessingException e) {
-            log.error("Failed to serialize SendNotificationRequest for userId {}", request.getUserId(), e);
-        } catch (Exception e) {
-            log.error("Failed to publish notification event to EventBridge for userId {}", request.getUserId(), e);
         }
     }
 
@@ -55,37 +102,182 @@ public class EventBridgeNotificationClient {
         if (requests == null || requests.isEmpty()) {
             return;
         }
+        List<SendNotificationRequest> failed = publish(requests);
+        if (!failed.isEmpty()) {
+            log.error("{} of {} notifications could not be published to EventBridge", failed.size(), requests.size());
+        }
+    }
 
-        for (int i = 0; i < requests.size(); i += MAX_ENTRIES_PER_REQUEST) {
-            List<SendNotificationRequest> chunk = requests.subList(i, Math.min(i + MAX_ENTRIES_PER_REQUEST, requests.size()));
-            List<PutEventsRequestEntry> entries = new ArrayList<>(chunk.size());
-            for (SendNotificationRequest req : chunk) {
-                try {
-                    entries.add(toEntry(req));
-                } catch (JsonProcessingException e) {
-                    log.error("Failed to serialize SendNotificationRequest for userId {}", req.getUserId(), e);
+    /**
+     * Publica en paralelo (hasta max-concurrency PutEvents en vuelo), reintenta las entradas
+     * rechazadas y espera a que termine todo. Devuelve las notificaciones que no se pudieron
+     * publicar tras agotar los intentos, incluidas las que no se pueden serializar.
+     */
+    public List<SendNotificationRequest> publish(List<SendNotificationRequest> requests) {
+        return publish(requests, maxAttempts);
+    }
+
+    /**
+     * Un solo intento por entrada, sin backoff en el hilo llamante: devuelve lo que EventBridge no
+     * aceptó. Lo usa el relay del outbox, que lleva sus propios reintentos persistidos.
+     */
+    public List<SendNotificationRequest> publishNow(List<SendNotificationRequest> requests) {
+        return publish(requests, 1);
+    }
+
+    private List<SendNotificationRequest> publish(List<SendNotificationRequest> requests, int maxAttempts) {
+        List<SendNotificationRequest> failed = new ArrayList<>();
+        List<Entry> pending = new ArrayList<>(requests.size());
+        for (SendNotificationRequest request : requests) {
+            Entry entry;
+            try {
+                entry = toEntry(request);
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize SendNotificationRequest for userId {}", request.getUserId(), e);
+                failedCounter.increment();
+                failed.add(request);
+                continue;
+            }
+            if (entry.bytes() > MAX_REQUEST_BYTES) {
+                log.error("Notification for userId {} exceeds the PutEvents size limit ({} bytes)", request.getUserId(), entry.bytes());
+                failedCounter.increment();
+                failed.add(request);
+                continue;
+            }
+            pending.add(entry);
+        }
+
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<List<Entry>> chunks = chunk(pending);
+            List<CompletableFuture<ChunkResult>> futures = new ArrayList<>(chunks.size());
+            try {
+                for (List<Entry> chunk : chunks) {
+                    inFlight.acquire();
+                    futures.add(put(chunk).whenComplete((r, e) -> inFlight.release()));
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Lo ya aceptado por EventBridge no se devuelve: solo lo rechazado y lo que no se llegó a enviar
+                for (CompletableFuture<ChunkResult> future : futures) {
+                    ChunkResult result = future.join();
+                    result.failed().forEach(entry -> failed.add(entry.request()));
+                    result.retry().forEach(entry -> failed.add(entry.request()));
+                }
+                chunks.subList(futures.size(), chunks.size())
+                        .forEach(chunk -> chunk.forEach(entry -> failed.add(entry.request())));
+                return failed;
             }
 
-            if (entries.isEmpty()) {
-                continue;
+            List<Entry> retry = new ArrayList<>();
+            for (CompletableFuture<ChunkResult> future : futures) {
+                ChunkResult result = future.join();
+                result.failed().forEach(entry -> failed.add(entry.request()));
+                retry.addAll(result.retry());
+            }
+
+            if (retry.isEmpty()) {
+                break;
+            }
+            if (attempt >= maxAttempts) {
+                failedCounter.increment(retry.size());
+                retry.forEach(entry -> failed.add(entry.request()));
+                log.error("{} notification(s) rejected by EventBridge after {} attempt(s)", retry.size(), attempt);
+                break;
             }
 
+            retriedCounter.increment(retry.size());
             try {
-                eventBridgeClient.putEvents(PutEventsRequest.builder().entries(entries).build());
-                log.info("Notification batch published to EventBridge ({} entries)", entries.size());
-            } catch (Exception e) {
-                log.error("Failed to publish notification batch to EventBridge ({} entries)", entries.size(), e);
+                Thread.sleep(retryBackoff.multipliedBy(attempt).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                retry.forEach(entry -> failed.add(entry.request()));
+                return failed;
+            }
+            pending = retry;
+        }
+        return failed;
+    }
+
+    // Agrupa por orden de llegada sin pasar de 10 entradas ni de 256KB por petición
+    private static List<List<Entry>> chunk(List<Entry> entries) {
+        List<List<Entry>> chunks = new ArrayList<>();
+        List<Entry> current = new ArrayList<>(MAX_ENTRIES_PER_REQUEST);
+        int bytes = 0;
+        for (Entry entry : entries) {
+            if (current.size() == MAX_ENTRIES_PER_REQUEST || bytes + entry.bytes() > MAX_REQUEST_BYTES) {
+                chunks.add(current);
+                current = new ArrayList<>(MAX_ENTRIES_PER_REQUEST);
+                bytes = 0;
+            }
+            current.add(entry);
+            bytes += entry.bytes();
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    private CompletableFuture<ChunkResult> put(List<Entry> chunk) {
+        PutEventsRequest request = PutEventsRequest.builder()
+                .entries(chunk.stream().map(Entry::entry).toList())
+                .build();
+        long start = System.nanoTime();
+        CompletableFuture<PutEventsResponse> call;
+        try {
+            call = eventBridgeClient.putEvents(request);
+        } catch (Exception e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((response, error) -> {
+            putTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (error != null) {
+                log.warn("PutEvents to EventBridge failed ({} entries): {}", chunk.size(), error.getMessage());
+                return new ChunkResult(chunk, List.of());
+            }
+            return toResult(chunk, response);
+        });
+    }
+
+    private ChunkResult toResult(List<Entry> chunk, PutEventsResponse response) {
+        Integer failedCount = response.failedEntryCount();
+        List<PutEventsResultEntry> results = response.entries();
+        if (failedCount == null || failedCount == 0 || results == null) {
+            sentCounter.increment(chunk.size());
+            return new ChunkResult(List.of(), List.of());
+        }
+
+        // Las entradas de la respuesta vienen en el mismo orden que las de la petición
+        List<Entry> retry = new ArrayList<>();
+        List<Entry> failed = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            String errorCode = i < results.size() ? results.get(i).errorCode() : null;
+            if (errorCode == null) {
+                sentCounter.increment();
+            } else if (PERMANENT_ERRORS.contains(errorCode)) {
+                failedCounter.increment();
+                log.error("EventBridge rejected notification for userId {}: {} {}",
+                        chunk.get(i).request().getUserId(), errorCode, results.get(i).errorMessage());
+                failed.add(chunk.get(i));
+            } else {
+                retry.add(chunk.get(i));
             }
         }
+        return new ChunkResult(retry, failed);
     }
 
-    private PutEventsRequestEntry toEntry(SendNotificationRequest request) throws JsonProcessingException {
-        return PutEventsRequestEntry.builder()
+    private Entry toEntry(SendNotificationRequest request) throws JsonProcessingException {
+        String detail = objectMapper.writeValueAsString(request);
+        PutEventsRequestEntry entry = PutEventsRequestEntry.builder()
                 .eventBusName(eventBusName)
-                .source("crm.notification")
-                .detailType("SendNotification")
-                .detail(objectMapper.writeValueAsString(request))
+                .source(SOURCE)
+                .detailType(DETAIL_TYPE)
+                .detail(detail)
                 .build();
+        int bytes = ENTRY_OVERHEAD_BYTES
+                + SOURCE.length()
+                + DETAIL_TYPE.length()
+                + detail.getBytes(StandardCharsets.UTF_8).length;
+        return new Entry(request, entry, bytes);
     }
 }
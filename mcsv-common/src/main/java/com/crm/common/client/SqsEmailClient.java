@@ -3,47 +3,285 @@ package com.crm.common.client;
 import com.crm.common.dto.EmailRequest;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publica correos en SQS de forma asíncrona: {@link #sendEmail} solo serializa y encola, y un hilo
+ * de envío agrupa los mensajes en SendMessageBatch de hasta 10 (o al vencer el linger), reintentando
+ * las entradas que fallen. Si el buffer está lleno, el envío se hace en el hilo llamante.
+ */
 @Component
 @ConditionalOnProperty(name = "aws.sqs.enabled", havingValue = "true")
 @Slf4j
 public class SqsEmailClient {
 
+    private static final int MAX_ENTRIES_PER_BATCH = 10;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private record Pending(EmailRequest request, String body, long enqueuedAt, int attempt) {
+    }
+
     private final SqsClient sqsClient;
     private final ObjectMapper objectMapper;
     private final String queueUrl;
+    private final long lingerNanos;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final BlockingQueue<Pending> buffer;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final Timer latencyTimer;
+    private final Timer batchTimer;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
 
     public SqsEmailClient(
             SqsClient sqsClient,
             ObjectMapper objectMapper,
-            @Value("${aws.sqs.email-queue-url}") String queueUrl) {
+            ObjectProvider<MeterRegistry> meterRegistryProvider,
+            @Value("${aws.sqs.email-queue-url}") String queueUrl,
+            @Value("${aws.sqs.batch.linger:50ms}") Duration linger,
+            @Value("${aws.sqs.batch.buffer-capacity:10000}") int bufferCapacity,
+            @Value("${aws.sqs.batch.max-attempts:3}") int maxAttempts,
+            @Value("${aws.sqs.batch.retry-backoff:200ms}") Duration retryBackoff) {
         this.sqsClient = sqsClient;
         this.objectMapper = objectMapper;
         this.queueUrl = queueUrl;
+        this.lingerNanos = linger.toNanos();
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.buffer = new LinkedBlockingQueue<>(bufferCapacity);
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        Gauge.builder("email.sqs.buffer", buffer, BlockingQueue::size)
+                .description("Emails waiting to be published to SQS")
+                .register(registry);
+        this.latencyTimer = Timer.builder("email.sqs.latency")
+                .description("Time from sendEmail until SQS accepted the message")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchTimer = Timer.builder("email.sqs.batch").register(registry);
+        this.sentCounter = Counter.builder("email.sqs.messages").tag("result", "sent").register(registry);
+        this.retriedCounter = Counter.builder("email.sqs.messages").tag("result", "retried").register(registry);
+        this.failedCounter = Counter.builder("email.sqs.messages").tag("result", "failed").register(registry);
+
+        this.flusher = Thread.ofPlatform().name("sqs-email-flusher").daemon(true).start(this::runFlusher);
     }
 
     public void sendEmail(EmailRequest request) {
+        String messageBody;
         try {
-            String messageBody = objectMapper.writeValueAsString(request);
+            messageBody = objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize EmailRequest", e);
+            throw new RuntimeException("Failed to queue email", e);
+        }
 
+        Pending pending = new Pending(request, messageBody, System.nanoTime(), 1);
+        if (running && buffer.offer(pending)) {
+            return;
+        }
+
+        // Buffer lleno (o cerrando): envío directo para no perder el correo
+        try {
             sqsClient.sendMessage(SendMessageRequest.builder()
                     .queueUrl(queueUrl)
                     .messageBody(messageBody)
                     .build());
-
+            recordSent(pending);
             log.info("Email queued to SQS for: {}", request.getTo());
-        } catch (JsonProcessingException e) {
-            log.error("Failed to serialize EmailRequest", e);
-            throw new RuntimeException("Failed to queue email", e);
         } catch (Exception e) {
+            failedCounter.increment();
             log.error("Failed to send message to SQS for: {}", request.getTo(), e);
             throw new RuntimeException("Failed to queue email", e);
         }
     }
+
+    /**
+     * Envía en el hilo llamante, sin pasar por el buffer ni reintentar, y devuelve los correos que
+     * SQS no aceptó o que no se pudieron serializar. Lo usa el relay del outbox, que lleva sus propios reintentos persistidos.
+     */
+    public List<EmailRequest> sendNow(List<EmailRequest> requests) {
+        List<EmailRequest> failed = new ArrayList<>();
+        List<Pending> batch = new ArrayList<>(MAX_ENTRIES_PER_BATCH);
+        int bytes = 0;
+        for (EmailRequest request : requests) {
+            Pending pending;
+            try {
+                pending = new Pending(request, objectMapper.writeValueAsString(request), System.nanoTime(), maxAttempts);
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize EmailRequest for: {}", request.getTo(), e);
+                failedCounter.increment();
+                failed.add(request);
+                continue;
+            }
+            int size = bodySize(pending);
+            if (batch.size() == MAX_ENTRIES_PER_BATCH || bytes + size > MAX_BATCH_BYTES) {
+                sendBatch(batch, failed);
+                batch.clear();
+                bytes = 0;
+            }
+            batch.add(pending);
+            bytes += size;
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(batch, failed);
+        }
+        return failed;
+    }
+
+    private void runFlusher() {
+        List<Pending> batch = new ArrayList<>(MAX_ENTRIES_PER_BATCH);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Pending first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int bytes = bodySize(first);
+                long deadline = System.nanoTime() + lingerNanos;
+
+                while (batch.size() < MAX_ENTRIES_PER_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? buffer.poll(remaining, TimeUnit.NANOSECONDS) : buffer.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    int size = bodySize(next);
+                    if (bytes + size > MAX_BATCH_BYTES) {
+                        publish(batch);
+                        batch.clear();
+                        bytes = 0;
+                    }
+                    batch.add(next);
+                    bytes += size;
+                }
+
+                publish(batch);
+            } catch (InterruptedException e) {
+                running = false;
+                break;
+            } catch (Exception e) {
+                log.error("Unexpected error in SQS email flusher", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publish(List<Pending> batch) throws InterruptedException {
+        List<Pending> toSend = new ArrayList<>(batch);
+        while (!toSend.isEmpty()) {
+            List<Pending> retry = sendBatch(toSend, null);
+            if (retry.isEmpty()) {
+                return;
+            }
+            retriedCounter.increment(retry.size());
+            Thread.sleep(retryBackoff.multipliedBy(retry.getFirst().attempt() - 1).toMillis());
+            toSend = retry;
+        }
+    }
+
+    // Devuelve las entradas a reintentar (ya con el intento incrementado); las definitivamente
+    // fallidas se añaden a failed si se indica
+    private List<Pending> sendBatch(List<Pending> batch, List<EmailRequest> failed) {
+        Map<String, Pending> byId = new HashMap<>();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String id = Integer.toString(i);
+            byId.put(id, batch.get(i));
+            entries.add(SendMessageBatchRequestEntry.builder().id(id).messageBody(batch.get(i).body()).build());
+        }
+
+        List<Pending> retry = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            SendMessageBatchResponse response = sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+
+            response.successful().forEach(ok -> recordSent(byId.get(ok.id())));
+            for (BatchResultErrorEntry error : response.failed()) {
+                Pending pending = byId.get(error.id());
+                if (Boolean.TRUE.equals(error.senderFault())) {
+                    fail(pending, error.code() + ": " + error.message(), failed);
+                } else {
+                    retryOrFail(pending, error.code(), retry, failed);
+                }
+            }
+            log.info("Email batch queued to SQS ({} sent, {} failed)", response.successful().size(), response.failed().size());
+        } catch (Exception e) {
+            log.warn("SendMessageBatch to SQS failed ({} entries): {}", batch.size(), e.getMessage());
+            batch.forEach(p -> retryOrFail(p, e.getMessage(), retry, failed));
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return retry;
+    }
+
+    private void retryOrFail(Pending pending, String reason, List<Pending> retry, List<EmailRequest> failed) {
+        if (pending.attempt() < maxAttempts) {
+            retry.add(new Pending(pending.request(), pending.body(), pending.enqueuedAt(), pending.attempt() + 1));
+        } else {
+            fail(pending, reason, failed);
+        }
+    }
+
+    private void fail(Pending pending, String reason, List<EmailRequest> failed) {
+        failedCounter.increment();
+        if (failed != null) {
+            failed.add(pending.request());
+        }
+        log.error("Failed to send message to SQS for: {} after {} attempt(s): {}",
+                pending.request().getTo(), pending.attempt(), reason);
+    }
+
+    private void recordSent(Pending pending) {
+        sentCounter.increment();
+        latencyTimer.record(System.nanoTime() - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
+    }
+
+    private static int bodySize(Pending pending) {
+        return pending.body().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        // Deja de aceptar y espera a que se vacíe el buffer
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        if (!buffer.isEmpty()) {
+            log.warn("{} emails still buffered at shutdown were not sent to SQS", buffer.size());
+        }
+    }
 }
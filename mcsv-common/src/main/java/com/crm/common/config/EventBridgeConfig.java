@@ -7,7 +7,7 @@ import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.eventbridge.EventBridgeClient;
+import software.amazon.awssdk.services.eventbridge.EventBridgeAsyncClient;
 
 @Configuration
 @ConditionalOnProperty(name = "aws.eventbridge.enabled", havingValue = "true")
@@ -22,9 +22,10 @@ public class EventBridgeConfig {
     @Value("${aws.secret-key:}")
     private String secretKey;
 
+    // Cliente asíncrono: permite tener varios PutEvents en vuelo sin bloquear un hilo por llamada
     @Bean
-    public EventBridgeClient eventBridgeClient() {
-        var builder = EventBridgeClient.builder()
+    public EventBridgeAsyncClient eventBridgeAsyncClient() {
+        var builder = EventBridgeAsyncClient.builder()
                 .region(Region.of(region));
 
         if (!accessKey.isBlank() && !secretKey.isBlank()) {
@@ -9,6 +9,8 @@ import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import java.net.URI;
+
 @Configuration
 @ConditionalOnProperty(name = "aws.sqs.enabled", havingValue = "true")
 public class SqsConfig {
@@ -22,6 +24,10 @@ public class SqsConfig {
     @Value("${aws.secret-key:}")
     private String secretKey;
 
+    // Endpoint alternativo (p. ej. ElasticMQ o LocalStack en local/tests)
+    @Value("${aws.sqs.endpoint:}")
+    private String endpoint;
+
     @Bean
     public SqsClient sqsClient() {
         var builder = SqsClient.builder()
@@ -32,6 +38,10 @@ public class SqsConfig {
                     AwsBasicCredentials.create(accessKey, secretKey)));
         }
 
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
         return builder.build();
     }
 }
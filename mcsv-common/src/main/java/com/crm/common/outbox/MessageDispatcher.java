@@ -0,0 +1,90 @@
+package com.crm.common.outbox;
+
+import com.crm.common.client.EventBridgeNotificationClient;
+import com.crm.common.client.SqsEmailClient;
+import com.crm.common.dto.EmailRequest;
+import com.crm.common.dto.SendNotificationRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Punto único para emitir notificaciones y correos. Con el outbox activo los mensajes se
+ * guardan en la transacción en curso y los envía el relay; sin él se envían directamente
+ * tras el commit (o al momento si no hay transacción).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageDispatcher {
+
+    private final ObjectProvider<OutboxPublisher> outboxPublisherProvider;
+    private final ObjectProvider<EventBridgeNotificationClient> notificationClientProvider;
+    private final ObjectProvider<SqsEmailClient> emailClientProvider;
+
+    public void notify(SendNotificationRequest request) {
+        notifyAll(List.of(request));
+    }
+
+    public void notifyAll(List<SendNotificationRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return;
+        }
+        OutboxPublisher outbox = outboxPublisherProvider.getIfAvailable();
+        if (outbox != null) {
+            outbox.enqueueNotifications(requests);
+            return;
+        }
+        EventBridgeNotificationClient client = notificationClientProvider.getIfAvailable();
+        if (client != null) {
+            List<SendNotificationRequest> copy = List.copyOf(requests);
+            afterCommit(() -> client.sendBatch(copy));
+        }
+    }
+
+    public void email(EmailRequest request) {
+        emailAll(List.of(request));
+    }
+
+    public void emailAll(List<EmailRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return;
+        }
+        OutboxPublisher outbox = outboxPublisherProvider.getIfAvailable();
+        if (outbox != null) {
+            outbox.enqueueEmails(requests);
+            return;
+        }
+        SqsEmailClient client = emailClientProvider.getIfAvailable();
+        if (client != null) {
+            List<EmailRequest> copy = List.copyOf(requests);
+            afterCommit(() -> copy.forEach(client::sendEmail));
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            run(action);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                run(action);
+            }
+        });
+    }
+
+    private void run(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.error("Failed to dispatch message", e);
+        }
+    }
+}
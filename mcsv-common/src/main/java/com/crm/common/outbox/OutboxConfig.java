@@ -0,0 +1,53 @@
+package com.crm.common.outbox;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Outbox transaccional compartido: la tabla se crea al arrancar (cada servicio usa la suya,
+ * configurada en outbox.table) y el relay se programa con @Scheduled.
+ * Se maneja con JDBC para no depender del escaneo de entidades de cada servicio.
+ */
+@Configuration
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+@EnableScheduling
+@Slf4j
+public class OutboxConfig {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+
+    public OutboxConfig(JdbcTemplate jdbcTemplate, @Value("${outbox.table:outbox_messages}") String table) {
+        if (!table.matches("[a-z][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid outbox table name: " + table);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+    }
+
+    @PostConstruct
+    void createSchema() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGSERIAL PRIMARY KEY,
+                    type VARCHAR(32) NOT NULL,
+                    payload TEXT NOT NULL,
+                    status VARCHAR(16) NOT NULL DEFAULT 'PENDING',
+                    attempts INT NOT NULL DEFAULT 0,
+                    created_at TIMESTAMP NOT NULL DEFAULT now(),
+                    next_attempt_at TIMESTAMP NOT NULL DEFAULT now(),
+                    last_error VARCHAR(1000)
+                )""".formatted(table));
+        // Índice parcial: el relay solo recorre las pendientes y las reclamadas (IN_FLIGHT) cuya
+        // concesión puede haber vencido, en orden de llegada. Sustituye al índice solo de PENDING
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_%s_pending".formatted(table));
+        jdbcTemplate.execute(("CREATE INDEX IF NOT EXISTS idx_%1$s_due ON %1$s (next_attempt_at, id)"
+                + " WHERE status IN ('PENDING', 'IN_FLIGHT')").formatted(table));
+        log.info("Outbox table ready: {}", table);
+    }
+}
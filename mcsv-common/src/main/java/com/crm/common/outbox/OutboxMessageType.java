@@ -0,0 +1,6 @@
+package com.crm.common.outbox;
+
+public enum OutboxMessageType {
+    NOTIFICATION,
+    EMAIL
+}
@@ -0,0 +1,57 @@
+package com.crm.common.outbox;
+
+import com.crm.common.dto.EmailRequest;
+import com.crm.common.dto.SendNotificationRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Escribe mensajes en el outbox con el JdbcTemplate del servicio, de modo que se unen a la
+ * transacción en curso: si la transacción hace rollback, el mensaje no se envía nunca.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxPublisher {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String insertSql;
+
+    public OutboxPublisher(JdbcTemplate jdbcTemplate,
+                           ObjectMapper objectMapper,
+                           @Value("${outbox.table:outbox_messages}") String table) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.insertSql = "INSERT INTO " + table + " (type, payload) VALUES (?, ?)";
+    }
+
+    public void enqueueNotifications(List<SendNotificationRequest> requests) {
+        enqueue(OutboxMessageType.NOTIFICATION, requests);
+    }
+
+    public void enqueueEmails(List<EmailRequest> requests) {
+        enqueue(OutboxMessageType.EMAIL, requests);
+    }
+
+    private void enqueue(OutboxMessageType type, List<?> payloads) {
+        if (payloads == null || payloads.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(payloads.size());
+        for (Object payload : payloads) {
+            try {
+                rows.add(new Object[]{type.name(), objectMapper.writeValueAsString(payload)});
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to serialize " + type + " outbox message", e);
+            }
+        }
+        jdbcTemplate.batchUpdate(insertSql, rows);
+    }
+}
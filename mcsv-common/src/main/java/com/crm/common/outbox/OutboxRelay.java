@@ -0,0 +1,281 @@
+package com.crm.common.outbox;
+
+import com.crm.common.client.EventBridgeNotificationClient;
+import com.crm.common.client.SqsEmailClient;
+import com.crm.common.dto.EmailRequest;
+import com.crm.common.dto.SendNotificationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Drena el outbox por lotes hacia EventBridge y SQS en tres pasos. Primero una transacción corta
+ * reclama el lote con FOR UPDATE SKIP LOCKED, lo marca IN_FLIGHT y le da una concesión
+ * ({@code outbox.relay.lease}), así varias réplicas drenan a la vez sin duplicar envíos. Después
+ * se envía sin ninguna transacción ni bloqueo abiertos. Por último, otra transacción corta borra lo
+ * enviado y reprograma lo fallido con backoff exponencial; agotados los intentos queda FAILED
+ * para revisión. Si la réplica muere a mitad, la fila vuelve a reclamarse al vencer la concesión.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+@Slf4j
+public class OutboxRelay {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    static final String PENDING = "PENDING";
+    static final String FAILED = "FAILED";
+
+    record Row(long id, OutboxMessageType type, String payload, int attempts) {
+    }
+
+    // Motivo del fallo de un envío; los permanentes (payload ilegible) no se reintentan
+    private record Failure(String message, boolean permanent) {
+    }
+
+    /** Nuevo estado de una fila fallida: attempts ya incluye el intento que acaba de fallar. */
+    record Retry(long id, int attempts, String status, double delaySeconds, String error) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<EventBridgeNotificationClient> notificationClientProvider;
+    private final ObjectProvider<SqsEmailClient> emailClientProvider;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+
+    private final String claimSql;
+    private final String deleteSql;
+    private final String rescheduleSql;
+    private final String statsSql;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final MeterRegistry meterRegistry;
+    private final Timer batchTimer;
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       ObjectMapper objectMapper,
+                       ObjectProvider<EventBridgeNotificationClient> notificationClientProvider,
+                       ObjectProvider<SqsEmailClient> emailClientProvider,
+                       ObjectProvider<MeterRegistry> meterRegistryProvider,
+                       @Value("${outbox.table:outbox_messages}") String table,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.max-batches-per-run:20}") int maxBatchesPerRun,
+                       @Value("${outbox.relay.max-attempts:10}") int maxAttempts,
+                       @Value("${outbox.relay.backoff:1s}") Duration backoff,
+                       @Value("${outbox.relay.max-backoff:5m}") Duration maxBackoff,
+                       @Value("${outbox.relay.lease:1m}") Duration lease) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.notificationClientProvider = notificationClientProvider;
+        this.emailClientProvider = emailClientProvider;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.lease = lease;
+
+        // Pendientes vencidas e IN_FLIGHT con la concesión caducada (réplica caída a mitad de envío)
+        this.claimSql = "UPDATE " + table + " SET status = 'IN_FLIGHT', next_attempt_at = now() + make_interval(secs => ?)"
+                + " WHERE id IN (SELECT id FROM " + table
+                + " WHERE status IN ('PENDING', 'IN_FLIGHT') AND next_attempt_at <= now()"
+                + " ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED)"
+                + " RETURNING id, type, payload, attempts";
+        this.deleteSql = "DELETE FROM " + table + " WHERE id = ?";
+        this.rescheduleSql = "UPDATE " + table + " SET attempts = ?, status = ?, last_error = ?,"
+                + " next_attempt_at = now() + make_interval(secs => ?) WHERE id = ?";
+        this.statsSql = "SELECT COUNT(*) FILTER (WHERE status IN ('PENDING', 'IN_FLIGHT')), COUNT(*) FILTER (WHERE status = 'FAILED'),"
+                + " COALESCE(EXTRACT(EPOCH FROM now() - MIN(created_at) FILTER (WHERE status IN ('PENDING', 'IN_FLIGHT'))), 0)"
+                + " FROM " + table;
+
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        Gauge.builder("outbox.pending", pending, AtomicLong::get)
+                .description("Outbox messages waiting to be relayed")
+                .register(meterRegistry);
+        Gauge.builder("outbox.failed", failed, AtomicLong::get)
+                .description("Outbox messages that exhausted their attempts")
+                .register(meterRegistry);
+        Gauge.builder("outbox.lag", lagSeconds, AtomicLong::get)
+                .description("Age in seconds of the oldest pending outbox message")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("outbox.relay.batch").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:500}")
+    public void relay() {
+        // Backpressure: como mucho maxBatchesPerRun lotes por pasada, y se corta en cuanto
+        // un lote viene incompleto (no queda más) o el destino no acepta nada
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            int[] result = relayBatch();
+            sample.stop(batchTimer);
+            if (result[0] < batchSize || (result[0] > 0 && result[1] == 0)) {
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.stats.interval-ms:10000}")
+    public void refreshStats() {
+        jdbcTemplate.query(statsSql, rs -> {
+            pending.set(rs.getLong(1));
+            failed.set(rs.getLong(2));
+            lagSeconds.set(rs.getLong(3));
+        });
+    }
+
+    // Devuelve {filas reclamadas, filas enviadas}
+    private int[] relayBatch() {
+        List<Row> rows = transactionTemplate.execute(status -> claim());
+        if (rows == null || rows.isEmpty()) {
+            return new int[]{0, 0};
+        }
+
+        // Envío fuera de toda transacción: las filas ya están reclamadas y no se retiene conexión ni bloqueo
+        List<Long> delivered = new ArrayList<>(rows.size());
+        Map<Row, Failure> errors = new IdentityHashMap<>();
+        send(rows, delivered, errors);
+
+        List<Retry> retries = errors.entrySet().stream()
+                .map(entry -> retryOf(entry.getKey(), entry.getValue().message(), entry.getValue().permanent()))
+                .toList();
+        transactionTemplate.executeWithoutResult(status -> finish(delivered, retries));
+        if (!retries.isEmpty()) {
+            log.warn("Outbox relay: {} message(s) rescheduled or failed", retries.size());
+        }
+        return new int[]{rows.size(), delivered.size()};
+    }
+
+    private List<Row> claim() {
+        return jdbcTemplate.query(claimSql,
+                (rs, i) -> new Row(rs.getLong(1), OutboxMessageType.valueOf(rs.getString(2)), rs.getString(3), rs.getInt(4)),
+                lease.toMillis() / 1000.0, batchSize);
+    }
+
+    private void send(List<Row> rows, List<Long> delivered, Map<Row, Failure> errors) {
+        Map<SendNotificationRequest, Row> notifications = new IdentityHashMap<>();
+        Map<EmailRequest, Row> emails = new IdentityHashMap<>();
+
+        for (Row row : rows) {
+            try {
+                switch (row.type()) {
+                    case NOTIFICATION -> notifications.put(objectMapper.readValue(row.payload(), SendNotificationRequest.class), row);
+                    case EMAIL -> emails.put(objectMapper.readValue(row.payload(), EmailRequest.class), row);
+                }
+            } catch (Exception e) {
+                // Un payload ilegible no mejora reintentando
+                errors.put(row, new Failure("Unreadable payload: " + e.getMessage(), true));
+            }
+        }
+
+        dispatch(notifications, notificationClientProvider.getIfAvailable() == null ? null
+                : list -> notificationClientProvider.getObject().publishNow(list), OutboxMessageType.NOTIFICATION, delivered, errors);
+        dispatch(emails, emailClientProvider.getIfAvailable() == null ? null
+                : list -> emailClientProvider.getObject().sendNow(list), OutboxMessageType.EMAIL, delivered, errors);
+    }
+
+    private void finish(List<Long> delivered, List<Retry> retries) {
+        if (!delivered.isEmpty()) {
+            jdbcTemplate.batchUpdate(deleteSql, delivered, delivered.size(), (ps, id) -> ps.setLong(1, id));
+        }
+        if (!retries.isEmpty()) {
+            jdbcTemplate.batchUpdate(rescheduleSql, retries, retries.size(), (ps, retry) -> {
+                ps.setInt(1, retry.attempts());
+                ps.setString(2, retry.status());
+                ps.setString(3, retry.error());
+                ps.setDouble(4, retry.delaySeconds());
+                ps.setLong(5, retry.id());
+            });
+        }
+    }
+
+    /**
+     * Siguiente estado de una fila cuyo envío falló: PENDING con backoff exponencial
+     * (backoff * 2^intentos previos, hasta maxBackoff) o FAILED si el fallo es permanente
+     * o se agotaron los intentos.
+     */
+    Retry retryOf(Row row, String error, boolean permanent) {
+        int attempts = row.attempts() + 1;
+        String status = permanent || attempts >= maxAttempts ? FAILED : PENDING;
+        double delaySeconds = Math.min(backoff.toMillis() * Math.pow(2, row.attempts()), maxBackoff.toMillis()) / 1000.0;
+        String message = error == null ? "" : error;
+        if (message.length() > MAX_ERROR_LENGTH) {
+            message = message.substring(0, MAX_ERROR_LENGTH);
+        }
+        return new Retry(row.id(), attempts, status, delaySeconds, message);
+    }
+
+    private <T> void dispatch(Map<T, Row> messages, Function<List<T>, List<T>> sender,
+                              OutboxMessageType type, List<Long> delivered, Map<Row, Failure> errors) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (sender == null) {
+            messages.values().forEach(row -> errors.put(row, new Failure("No client configured for " + type, false)));
+            return;
+        }
+
+        List<T> undelivered;
+        try {
+            undelivered = sender.apply(new ArrayList<>(messages.keySet()));
+        } catch (Exception e) {
+            log.error("Outbox relay failed to dispatch {} {} message(s)", messages.size(), type, e);
+            messages.values().forEach(row -> errors.put(row, new Failure(e.getMessage(), false)));
+            count(type, "failed", messages.size());
+            return;
+        }
+
+        Map<T, Boolean> failedSet = new IdentityHashMap<>();
+        undelivered.forEach(message -> failedSet.put(message, Boolean.TRUE));
+        messages.forEach((message, row) -> {
+            if (failedSet.containsKey(message)) {
+                errors.put(row, new Failure("Rejected by " + type + " destination", false));
+            } else {
+                delivered.add(row.id());
+            }
+        });
+        count(type, "sent", messages.size() - undelivered.size());
+        count(type, "failed", undelivered.size());
+    }
+
+    private void count(OutboxMessageType type, String result, int amount) {
+        if (amount > 0) {
+            Counter.builder("outbox.dispatched")
+                    .tag("type", type.name())
+                    .tag("result", result)
+                    .register(meterRegistry)
+                    .increment(amount);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.crm.common.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Buffer de escritura diferida para actualizaciones que solo necesitan el último valor por clave
+ * (último login, última actividad de una sesión). Las actualizaciones repetidas de una clave entre
+ * dos vaciados se combinan con {@code merge} y el {@code writer} recibe lotes de hasta
+ * {@code maxBatchSize} claves. Si el buffer está lleno, una clave nueva se escribe en el acto.
+ * Un lote que falla vuelve al buffer para el siguiente vaciado sin pasar de {@code capacity}: lo que
+ * no cabe se descarta (métrica {@code result=dropped}), así un fallo prolongado no hace crecer la memoria.
+ */
+@Slf4j
+public class WriteBehindBuffer<K, V> {
+
+    private final String name;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final BinaryOperator<V> merge;
+    private final Consumer<Map<K, V>> writer;
+    // Protege pending: la comprobación de capacidad y el merge van juntos
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<K, V> pending = new HashMap<>();
+
+    private final Counter bufferedCounter;
+    private final Counter coalescedCounter;
+    private final Counter directCounter;
+    private final Counter droppedCounter;
+    private final Timer flushTimer;
+
+    public WriteBehindBuffer(String name, int capacity, int maxBatchSize, BinaryOperator<V> merge,
+                             Consumer<Map<K, V>> writer, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.merge = merge;
+        this.writer = writer;
+
+        this.bufferedCounter = Counter.builder("writebehind.updates").tag("buffer", name).tag("result", "buffered")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("writebehind.updates").tag("buffer", name).tag("result", "coalesced")
+                .register(meterRegistry);
+        this.directCounter = Counter.builder("writebehind.updates").tag("buffer", name).tag("result", "direct")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("writebehind.updates").tag("buffer", name).tag("result", "dropped")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("writebehind.flush").tag("buffer", name)
+                .description("Duration of write-behind flushes")
+                .register(meterRegistry);
+        Gauge.builder("writebehind.pending", this, WriteBehindBuffer::size).tag("buffer", name)
+                .description("Keys waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            V current = pending.get(key);
+            if (current != null) {
+                pending.put(key, merge.apply(current, value));
+                coalescedCounter.increment();
+                return;
+            }
+            if (pending.size() < capacity) {
+                pending.put(key, value);
+                bufferedCounter.increment();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Lleno: se escribe fuera del lock para no bloquear al resto
+        directCounter.increment();
+        writer.accept(Map.of(key, value));
+    }
+
+    /**
+     * Vacía el buffer por lotes. Devuelve el número de claves escritas.
+     */
+    public int flush() {
+        if (size() == 0) {
+            return 0;
+        }
+        flushLock.lock();
+        try {
+            return flushTimer.record(this::drain);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int drain() {
+        Map<K, V> drained;
+        lock.lock();
+        try {
+            drained = pending;
+            pending = new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+
+        int written = 0;
+        Map<K, V> failed = new HashMap<>();
+        Map<K, V> batch = new HashMap<>();
+        for (Map.Entry<K, V> entry : drained.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() >= maxBatchSize) {
+                written += write(batch, failed);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            written += write(batch, failed);
+        }
+        if (!failed.isEmpty()) {
+            requeue(failed);
+        }
+        return written;
+    }
+
+    // Lo fallido se reintenta en el siguiente vaciado, combinado con lo que haya llegado mientras
+    // tanto; las claves nuevas cuentan para la capacidad igual que en put
+    private void requeue(Map<K, V> failed) {
+        int dropped = 0;
+        lock.lock();
+        try {
+            for (Map.Entry<K, V> entry : failed.entrySet()) {
+                V current = pending.get(entry.getKey());
+                if (current != null) {
+                    pending.put(entry.getKey(), merge.apply(entry.getValue(), current));
+                } else if (pending.size() < capacity) {
+                    pending.put(entry.getKey(), entry.getValue());
+                } else {
+                    dropped++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dropped > 0) {
+            droppedCounter.increment(dropped);
+            log.warn("Write-behind buffer '{}' is full; dropped {} failed update(s)", name, dropped);
+        }
+    }
+
+    private int write(Map<K, V> batch, Map<K, V> failed) {
+        try {
+            writer.accept(batch);
+            return batch.size();
+        } catch (Exception e) {
+            failed.putAll(batch);
+            log.warn("Write-behind flush of '{}' failed for {} key(s): {}", name, batch.size(), e.getMessage());
+            return 0;
+        }
+    }
+}
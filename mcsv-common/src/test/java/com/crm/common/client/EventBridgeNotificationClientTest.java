@@ -0,0 +1,108 @@
+package com.crm.common.client;
+
+import com.crm.common.dto.SendNotificationRequest;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import software.amazon.awssdk.services.eventbridge.EventBridgeAsyncClient;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsRequest;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EventBridgeNotificationClient Tests")
+class EventBridgeNotificationClientTest {
+
+    @Mock
+    private EventBridgeAsyncClient eventBridgeClient;
+
+    @Mock
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private EventBridgeNotificationClient client;
+
+    @BeforeEach
+    void setUp() {
+        when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+        client = new EventBridgeNotificationClient(eventBridgeClient, new ObjectMapper(), meterRegistryProvider,
+                "crm-events", 1, 3, Duration.ofMillis(1));
+    }
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    private static List<SendNotificationRequest> requests(int count) {
+        return LongStream.rangeClosed(1, count)
+                .mapToObj(id -> SendNotificationRequest.builder().userId(id).title("t").message("m").build())
+                .toList();
+    }
+
+    // ---------------------------------------------------------------
+    // publishNow
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("publishNow()")
+    class PublishNow {
+
+        @Test
+        @DisplayName("interrupted mid-round: accepted chunks are not returned, unsent chunks are")
+        void interrupted_returnsOnlyUnsent() {
+            when(eventBridgeClient.putEvents(any(PutEventsRequest.class))).thenAnswer(inv -> {
+                // El primer lote se acepta y el hilo se interrumpe antes de enviar el segundo
+                Thread.currentThread().interrupt();
+                return CompletableFuture.completedFuture(PutEventsResponse.builder().failedEntryCount(0).build());
+            });
+            List<SendNotificationRequest> requests = requests(11);
+
+            List<SendNotificationRequest> failed = client.publishNow(requests);
+
+            assertThat(failed).containsExactly(requests.get(10));
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+            verify(eventBridgeClient, times(1)).putEvents(any(PutEventsRequest.class));
+        }
+
+        @Test
+        @DisplayName("unserializable request: returned as failed so the relay does not delete it")
+        void unserializable_returnedAsFailed() throws Exception {
+            ObjectMapper objectMapper = spy(new ObjectMapper());
+            List<SendNotificationRequest> requests = requests(2);
+            doThrow(new JsonMappingException(null, "boom")).when(objectMapper).writeValueAsString(requests.get(0));
+            when(eventBridgeClient.putEvents(any(PutEventsRequest.class))).thenReturn(
+                    CompletableFuture.completedFuture(PutEventsResponse.builder().failedEntryCount(0).build()));
+            EventBridgeNotificationClient spied = new EventBridgeNotificationClient(eventBridgeClient, objectMapper,
+                    meterRegistryProvider, "crm-events", 1, 3, Duration.ofMillis(1));
+
+            assertThat(spied.publishNow(requests)).containsExactly(requests.get(0));
+        }
+
+        @Test
+        @DisplayName("all chunks accepted: nothing is returned")
+        void accepted_returnsNothing() {
+            when(eventBridgeClient.putEvents(any(PutEventsRequest.class))).thenReturn(
+                    CompletableFuture.completedFuture(PutEventsResponse.builder().failedEntryCount(0).build()));
+
+            assertThat(client.publishNow(requests(11))).isEmpty();
+            verify(eventBridgeClient, times(2)).putEvents(any(PutEventsRequest.class));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.crm.common.outbox;
+
+import com.crm.common.client.EventBridgeNotificationClient;
+import com.crm.common.client.SqsEmailClient;
+import com.crm.common.dto.SendNotificationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("OutboxRelay Tests")
+class OutboxRelayTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ObjectProvider<EventBridgeNotificationClient> notificationClientProvider;
+
+    @Mock
+    private ObjectProvider<SqsEmailClient> emailClientProvider;
+
+    @Mock
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Mock
+    private EventBridgeNotificationClient notificationClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private OutboxRelay relay;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @BeforeEach
+    void setUp() {
+        when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+        relay = new OutboxRelay(jdbcTemplate, transactionManager, objectMapper,
+                notificationClientProvider, emailClientProvider, meterRegistryProvider,
+                "test_outbox", 100, 5, MAX_ATTEMPTS,
+                Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(1));
+    }
+
+    private OutboxRelay.Row notificationRow(long id, int attempts) throws Exception {
+        String payload = objectMapper.writeValueAsString(SendNotificationRequest.builder()
+                .userId(id).title("t").message("m").build());
+        return new OutboxRelay.Row(id, OutboxMessageType.NOTIFICATION, payload, attempts);
+    }
+
+    private void claims(OutboxRelay.Row... rows) {
+        when(jdbcTemplate.query(startsWith("UPDATE test_outbox SET status = 'IN_FLIGHT'"),
+                ArgumentMatchers.<RowMapper<OutboxRelay.Row>>any(), any(), any()))
+                .thenReturn(List.of(rows));
+    }
+
+    private void notificationClientAvailable() {
+        when(notificationClientProvider.getIfAvailable()).thenReturn(notificationClient);
+        when(notificationClientProvider.getObject()).thenReturn(notificationClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> captureBatch(String sqlPrefix) {
+        ArgumentCaptor<Collection<T>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(startsWith(sqlPrefix), captor.capture(), anyInt(), any());
+        return new ArrayList<>(captor.getValue());
+    }
+
+    // ---------------------------------------------------------------
+    // relay
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("relay()")
+    class Relay {
+
+        @Test
+        @DisplayName("delivered messages are deleted and nothing is rescheduled")
+        void delivered_deleted() throws Exception {
+            claims(notificationRow(1, 0), notificationRow(2, 0));
+            notificationClientAvailable();
+            when(notificationClient.publishNow(anyList())).thenReturn(List.of());
+
+            relay.relay();
+
+            assertThat(OutboxRelayTest.this.<Long>captureBatch("DELETE")).containsExactlyInAnyOrder(1L, 2L);
+            verify(jdbcTemplate, never()).batchUpdate(startsWith("UPDATE"), anyCollection(), anyInt(), any());
+        }
+
+        @Test
+        @DisplayName("claim and finish run in separate transactions; sending happens outside both")
+        void sendOutsideTransaction() throws Exception {
+            claims(notificationRow(1, 0));
+            notificationClientAvailable();
+            when(notificationClient.publishNow(anyList())).thenReturn(List.of());
+
+            relay.relay();
+
+            InOrder inOrder = inOrder(transactionManager, notificationClient);
+            inOrder.verify(transactionManager).getTransaction(any());
+            inOrder.verify(transactionManager).commit(any());
+            inOrder.verify(notificationClient).publishNow(anyList());
+            inOrder.verify(transactionManager).getTransaction(any());
+            inOrder.verify(transactionManager).commit(any());
+        }
+
+        @Test
+        @DisplayName("rejected message: rescheduled as PENDING with exponential backoff")
+        void rejected_rescheduled() throws Exception {
+            claims(notificationRow(1, 1));
+            notificationClientAvailable();
+            when(notificationClient.publishNow(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+            relay.relay();
+
+            List<OutboxRelay.Retry> retries = captureBatch("UPDATE test_outbox SET attempts");
+            assertThat(retries).singleElement().satisfies(retry -> {
+                assertThat(retry.id()).isEqualTo(1L);
+                assertThat(retry.attempts()).isEqualTo(2);
+                assertThat(retry.status()).isEqualTo(OutboxRelay.PENDING);
+                assertThat(retry.delaySeconds()).isEqualTo(2.0);
+            });
+            verify(jdbcTemplate, never()).batchUpdate(startsWith("DELETE"), anyCollection(), anyInt(), any());
+        }
+
+        @Test
+        @DisplayName("client throws on the last attempt: row moves to FAILED")
+        void lastAttempt_failed() throws Exception {
+            claims(notificationRow(1, MAX_ATTEMPTS - 1));
+            notificationClientAvailable();
+            when(notificationClient.publishNow(anyList())).thenThrow(new IllegalStateException("boom"));
+
+            relay.relay();
+
+            List<OutboxRelay.Retry> retries = captureBatch("UPDATE test_outbox SET attempts");
+            assertThat(retries).singleElement().satisfies(retry -> {
+                assertThat(retry.attempts()).isEqualTo(MAX_ATTEMPTS);
+                assertThat(retry.status()).isEqualTo(OutboxRelay.FAILED);
+                assertThat(retry.error()).isEqualTo("boom");
+            });
+        }
+
+        @Test
+        @DisplayName("unreadable payload: FAILED on the first attempt without calling the client")
+        void unreadable_failedImmediately() {
+            claims(new OutboxRelay.Row(9, OutboxMessageType.NOTIFICATION, "{not json", 0));
+
+            relay.relay();
+
+            List<OutboxRelay.Retry> retries = captureBatch("UPDATE test_outbox SET attempts");
+            assertThat(retries).singleElement().satisfies(retry -> {
+                assertThat(retry.attempts()).isEqualTo(1);
+                assertThat(retry.status()).isEqualTo(OutboxRelay.FAILED);
+                assertThat(retry.error()).startsWith("Unreadable payload");
+            });
+            verifyNoInteractions(notificationClient);
+        }
+
+        @Test
+        @DisplayName("nothing to claim: no send and no finish transaction")
+        void empty_stops() {
+            claims();
+
+            relay.relay();
+
+            verify(transactionManager, times(1)).getTransaction(any());
+            verifyNoInteractions(notificationClientProvider, emailClientProvider);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // retryOf
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("retryOf()")
+    class RetryOf {
+
+        @Test
+        @DisplayName("backoff is capped at max-backoff")
+        void backoffCapped() {
+            OutboxRelay.Row row = new OutboxRelay.Row(1, OutboxMessageType.EMAIL, "{}", 1);
+            OutboxRelay manyAttempts = new OutboxRelay(jdbcTemplate, transactionManager, objectMapper,
+                    notificationClientProvider, emailClientProvider, meterRegistryProvider,
+                    "test_outbox", 100, 5, 20, Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(1));
+
+            assertThat(manyAttempts.retryOf(new OutboxRelay.Row(1, OutboxMessageType.EMAIL, "{}", 10), "x", false)
+                    .delaySeconds()).isEqualTo(30.0);
+            assertThat(manyAttempts.retryOf(row, "x", false).delaySeconds()).isEqualTo(2.0);
+        }
+
+        @Test
+        @DisplayName("long errors are truncated to the column size")
+        void errorTruncated() {
+            OutboxRelay.Row row = new OutboxRelay.Row(1, OutboxMessageType.EMAIL, "{}", 0);
+
+            assertThat(relay.retryOf(row, "e".repeat(5000), false).error()).hasSize(1000);
+            assertThat(relay.retryOf(row, null, false).error()).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.crm.common.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("WriteBehindBuffer Tests")
+class WriteBehindBufferTest {
+
+    private MeterRegistry meterRegistry;
+    private List<Map<String, Integer>> writes;
+    private WriteBehindBuffer<String, Integer> buffer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        writes = new ArrayList<>();
+        buffer = buffer(3, 2, batch -> writes.add(new HashMap<>(batch)));
+    }
+
+    // Se queda con el mayor, como el último login
+    private WriteBehindBuffer<String, Integer> buffer(int capacity, int maxBatchSize, Consumer<Map<String, Integer>> writer) {
+        return new WriteBehindBuffer<>("test", capacity, maxBatchSize, Math::max, writer, meterRegistry);
+    }
+
+    private double updates(String result) {
+        return meterRegistry.get("writebehind.updates").tag("result", result).counter().count();
+    }
+
+    private Map<String, Integer> written() {
+        Map<String, Integer> all = new HashMap<>();
+        writes.forEach(all::putAll);
+        return all;
+    }
+
+    // ---------------------------------------------------------------
+    // put
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("put()")
+    class Put {
+
+        @Test
+        @DisplayName("repeated keys are coalesced with merge until the next flush")
+        void coalesces() {
+            buffer.put("a", 1);
+            buffer.put("a", 5);
+            buffer.put("a", 3);
+
+            assertThat(buffer.size()).isEqualTo(1);
+            assertThat(writes).isEmpty();
+            assertThat(updates("buffered")).isEqualTo(1);
+            assertThat(updates("coalesced")).isEqualTo(2);
+
+            assertThat(buffer.flush()).isEqualTo(1);
+            assertThat(written()).containsExactly(entry("a", 5));
+        }
+
+        @Test
+        @DisplayName("full buffer: a new key is written directly and a buffered key still coalesces")
+        void fullBufferWritesDirectly() {
+            buffer.put("a", 1);
+            buffer.put("b", 1);
+            buffer.put("c", 1);
+
+            buffer.put("d", 7);
+            buffer.put("a", 2);
+
+            assertThat(writes).containsExactly(Map.of("d", 7));
+            assertThat(buffer.size()).isEqualTo(3);
+            assertThat(updates("direct")).isEqualTo(1);
+            assertThat(updates("coalesced")).isEqualTo(1);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // flush
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("flush()")
+    class Flush {
+
+        @Test
+        @DisplayName("writes in batches of at most maxBatchSize and empties the buffer")
+        void batches() {
+            buffer.put("a", 1);
+            buffer.put("b", 2);
+            buffer.put("c", 3);
+
+            assertThat(buffer.flush()).isEqualTo(3);
+
+            assertThat(writes).hasSize(2).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(2));
+            assertThat(written()).containsOnly(entry("a", 1), entry("b", 2), entry("c", 3));
+            assertThat(buffer.size()).isZero();
+            assertThat(buffer.flush()).isZero();
+        }
+
+        @Test
+        @DisplayName("failed batch is merged back with updates that arrived meanwhile")
+        void failureMergedBack() {
+            boolean[] fail = {true};
+            AtomicReference<WriteBehindBuffer<String, Integer>> self = new AtomicReference<>();
+            self.set(buffer(3, 10, batch -> {
+                if (fail[0]) {
+                    fail[0] = false;
+                    self.get().put("a", 9);   // llega durante el vaciado
+                    throw new IllegalStateException("db down");
+                }
+                writes.add(new HashMap<>(batch));
+            }));
+            self.get().put("a", 1);
+            self.get().put("b", 2);
+
+            assertThat(self.get().flush()).isZero();
+            assertThat(self.get().size()).isEqualTo(2);
+
+            assertThat(self.get().flush()).isEqualTo(2);
+            assertThat(written()).containsOnly(entry("a", 9), entry("b", 2));
+        }
+
+        @Test
+        @DisplayName("failed keys count toward capacity: what does not fit is dropped")
+        void failureRespectsCapacity() {
+            boolean[] fail = {true};
+            AtomicReference<WriteBehindBuffer<String, Integer>> self = new AtomicReference<>();
+            self.set(buffer(2, 10, batch -> {
+                if (fail[0]) {
+                    fail[0] = false;
+                    self.get().put("c", 3);
+                    self.get().put("d", 4);
+                    throw new IllegalStateException("db down");
+                }
+                writes.add(new HashMap<>(batch));
+            }));
+            self.get().put("a", 1);
+            self.get().put("b", 2);
+
+            self.get().flush();
+
+            assertThat(self.get().size()).isEqualTo(2);
+            assertThat(updates("dropped")).isEqualTo(2);
+            self.get().flush();
+            assertThat(written()).containsOnly(entry("c", 3), entry("d", 4));
+        }
+    }
+}
@@ -4,12 +4,26 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 @ConfigurationProperties(prefix = "jwt")
 @Data
 public class JwtConfig {
     private String secret;
     private Long expireAt;
+    /** Verifica firma y expiración del JWT en el gateway, sin llamar a mcsv-auth. */
+    private boolean localValidation = true;
+    /** Con validación local, consulta igualmente /v1/validateToken (p. ej. para detectar revocaciones). */
+    private boolean remoteRevocationCheck = false;
+    /** TTL máximo de las respuestas de mcsv-auth cacheadas (nunca supera la expiración del token). */
+    private Duration validationCacheTtl = Duration.ofSeconds(5);
+    private int validationCacheMaxSize = 10_000;
+    /** Canal Redis en el que mcsv-auth publica revocaciones de usuarios y sesiones. */
+    private String revocationChannel = "auth:revocations";
+    /** Sorted set de mcsv-auth con las sesiones revocadas (score = epoch millis de fin de rechazo). */
+    private String revokedSessionsKey = "auth:revoked-sessions";
+    private int revokedSessionsExpected = 100_000;
 
     public String getSecret() {
         return secret;
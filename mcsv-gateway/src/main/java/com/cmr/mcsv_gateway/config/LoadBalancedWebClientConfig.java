@@ -1,16 +1,62 @@
 package com.cmr.mcsv_gateway.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class LoadBalancedWebClientConfig {
 
+    @Value("${auth-client.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${auth-client.pending-acquire-timeout:2s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${auth-client.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${auth-client.connect-timeout:1s}")
+    private Duration connectTimeout;
+
+    @Value("${auth-client.response-timeout:3s}")
+    private Duration responseTimeout;
+
     @Bean
     @LoadBalanced
     public WebClient.Builder loadBalancedWebClientBuilder() {
         return WebClient.builder();
     }
+
+    /**
+     * Cliente para las validaciones contra mcsv-auth, construido una sola vez y con su propio
+     * pool de conexiones para no competir con el tráfico enrutado por el gateway.
+     */
+    @Bean
+    public WebClient authWebClient(@Qualifier("loadBalancedWebClientBuilder") WebClient.Builder loadBalancedBuilder) {
+        ConnectionProvider provider = ConnectionProvider.builder("mcsv-auth")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout);
+
+        return loadBalancedBuilder.clone()
+                .baseUrl("lb://mcsv-auth")
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
 }
@@ -0,0 +1,29 @@
+package com.cmr.mcsv_gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reglas de permisos por ruta para AuthFilter. Se combinan con las reglas por defecto
+ * (o las reemplazan si replace-defaults = true); una regla configurada con el mismo
+ * método y path sobrescribe a la por defecto.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.permissions")
+@Data
+public class PermissionProperties {
+
+    private boolean replaceDefaults = false;
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        private String method;
+        private String path;
+        private String permission;
+    }
+}
@@ -1,5 +1,7 @@
 package com.cmr.mcsv_gateway.config;
 
+import com.cmr.mcsv_gateway.filter.AuthFilter;
+import io.jsonwebtoken.Claims;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,8 +28,10 @@ public class RateLimiterConfig {
     @Bean
     public KeyResolver userKeyResolver() {
         return exchange -> {
-            String userId = exchange.getRequest().getHeaders().getFirst("X-User-Id");
-            if (userId != null && !userId.isBlank()) {
+            // Claims verificados por AuthFilter; no se confía en un X-User-Id enviado por el cliente
+            Claims claims = exchange.getAttribute(AuthFilter.JWT_CLAIMS_ATTR);
+            Object userId = claims != null ? claims.get("userId") : null;
+            if (userId != null) {
                 return Mono.just("user:" + userId);
             }
             String ip = exchange.getRequest().getHeaders().getFirst("X-Forwarded-For");
@@ -1,20 +1,30 @@
 package com.cmr.mcsv_gateway.filter;
 
 import com.cmr.mcsv_gateway.config.JwtConfig;
+import com.cmr.mcsv_gateway.config.PermissionProperties;
+import com.cmr.mcsv_gateway.model.TokenValidationRequest;
 import com.cmr.mcsv_gateway.model.ValidationError;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpCookie;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -22,9 +32,12 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import javax.crypto.SecretKey;
+
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -37,8 +50,14 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
     private final Logger logger = LoggerFactory.getLogger(AuthFilter.class);
     private static final String ERROR_SERVICE_UNAVAILABLE = "Servicio no disponible";
     private static final String ACCESS_TOKEN_COOKIE = "access_token";
+    private static final ParameterizedTypeReference<List<ValidationError>> VALIDATION_LIST_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    /** Claims del JWT ya verificado; se parsea una sola vez por request y lo leen los filtros siguientes. */
+    public static final String JWT_CLAIMS_ATTR = AuthFilter.class.getName() + ".claims";
 
-    private static final Map<String, String> PERMISSION_MAP = Map.ofEntries(
+    /** Reglas por defecto; se pueden ampliar o reemplazar con gateway.permissions.* */
+    static final Map<String, String> DEFAULT_PERMISSIONS = Map.ofEntries(
             Map.entry("POST:/v1/api/user/import",          "USER:CREATE"),
             Map.entry("POST:/v1/api/role/import",          "ROLE:CREATE"),
             Map.entry("POST:/v1/api/rrhh/employee/import", "EMPLOYEE:CREATE"),
@@ -70,14 +89,17 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
             Map.entry("POST:/v1/api/project/project-type/create",       "PROJECT_TYPE:CREATE"),
             Map.entry("PUT:/v1/api/project/project-type/update",         "PROJECT_TYPE:UPDATE"),
             Map.entry("POST:/v1/api/project/project-type/updateStatus",  "PROJECT_TYPE:UPDATE"),
+            Map.entry("PUT:/v1/api/project/project-type",                "PROJECT_TYPE:UPDATE"),
             Map.entry("GET:/v1/api/project/project-type",                "PROJECT_TYPE:READ"),
             Map.entry("POST:/v1/api/project/project-status/create",      "PROJECT_STATUS:CREATE"),
             Map.entry("PUT:/v1/api/project/project-status/update",       "PROJECT_STATUS:UPDATE"),
             Map.entry("POST:/v1/api/project/project-status/updateStatus","PROJECT_STATUS:UPDATE"),
+            Map.entry("PUT:/v1/api/project/project-status",              "PROJECT_STATUS:UPDATE"),
             Map.entry("GET:/v1/api/project/project-status",              "PROJECT_STATUS:READ"),
             Map.entry("POST:/v1/api/project/project-specialty/create",      "PROJECT_SPECIALTY:CREATE"),
             Map.entry("PUT:/v1/api/project/project-specialty/update",        "PROJECT_SPECIALTY:UPDATE"),
             Map.entry("POST:/v1/api/project/project-specialty/updateStatus", "PROJECT_SPECIALTY:UPDATE"),
+            Map.entry("PUT:/v1/api/project/project-specialty",               "PROJECT_SPECIALTY:UPDATE"),
             Map.entry("GET:/v1/api/project/project-specialty",               "PROJECT_SPECIALTY:READ"),
             Map.entry("POST:/v1/api/project/project/create",  "PROJECT:CREATE"),
             Map.entry("POST:/v1/api/project/project/import",  "PROJECT:CREATE"),
@@ -144,8 +166,14 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
             Map.entry("GET:/v1/api/rrhh/attendance",                         "ATTENDANCE:READ")
     );
 
-    private final WebClient.Builder webClient;
+    private final WebClient authWebClient;
     private final JwtConfig jwtConfig;
+    private final MeterRegistry meterRegistry;
+    // Se construye en el primer uso: una clave ausente o débil falla por request, no al arrancar
+    private volatile JwtParser jwtParser;
+    private final RoutePermissionTrie permissionTrie;
+    private final TokenValidationCache validationCache;
+    private final RevokedSessionRegistry revokedSessions;
 
     @Getter
     @Setter
@@ -155,11 +183,19 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
         private boolean postLogger;
     }
 
-    public AuthFilter(WebClient.Builder webClient, JwtConfig jwtConfig) {
+    public AuthFilter(@Qualifier("authWebClient") WebClient authWebClient, JwtConfig jwtConfig, MeterRegistry meterRegistry,
+                      PermissionProperties permissionProperties, TokenValidationCache validationCache,
+                      RevokedSessionRegistry revokedSessions) {
         super(Config.class);
-        this.webClient = webClient;
+        this.authWebClient = authWebClient;
         this.jwtConfig = jwtConfig;
-        logger.info("AuthFilter");
+        this.meterRegistry = meterRegistry;
+        this.validationCache = validationCache;
+        this.revokedSessions = revokedSessions;
+        this.permissionTrie = RoutePermissionTrie.compile(buildPermissionRules(permissionProperties));
+        logger.info("AuthFilter permission rules compiled: {}", permissionTrie.size());
+        logger.info("AuthFilter (local validation: {}, remote revocation check: {})",
+                jwtConfig.isLocalValidation(), jwtConfig.isRemoteRevocationCheck());
     }
 
     @Override
@@ -186,65 +222,144 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
                 return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, ERROR_SERVICE_UNAVAILABLE));
             }
 
-            return checkExchangeValidToken(mutatedExchange).flatMap(valid -> {
-                if (!valid.isValid()) {
-                    return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, valid.getErrorMessage()));
-                }
-
-                // Local permission check using JWT claims — no extra DB call
-                String method = mutatedExchange.getRequest().getMethod().name();
-                String urlPath = getUrlPath(mutatedExchange);
-                if (!checkPermission(mutatedExchange, method, urlPath)) {
-                    logger.warn("Permission denied for {} {}", method, urlPath);
-                    return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Insufficient permissions"));
-                }
-
-                return checkExchangeValidUrl(mutatedExchange).flatMap(validUrl -> {
-                    if (!validUrl.isValid()) {
-                        return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, validUrl.getErrorMessage()));
-                    }
-                    ServerWebExchange enrichedExchange = injectUserIdHeader(mutatedExchange);
-                    return chain.filter(enrichedExchange);
-                });
-            });
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return authorize(mutatedExchange)
+                    .doOnSuccess(ignored -> stopTimer(sample, "allowed"))
+                    .doOnError(e -> stopTimer(sample, "denied"))
+                    .flatMap(chain::filter);
         });
     }
 
+    /**
+     * Valida el token y los permisos de la ruta. Devuelve el exchange con X-User-Id inyectado
+     * o un error 401/403. En modo local solo se llama a mcsv-auth si remoteRevocationCheck está activo.
+     */
+    private Mono<ServerWebExchange> authorize(ServerWebExchange exchange) {
+        if (!jwtConfig.isLocalValidation()) {
+            return authorizeRemote(exchange);
+        }
+
+        ValidationError local = validateLocally(exchange);
+        if (!local.isValid()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, local.getErrorMessage()));
+        }
+
+        String method = exchange.getRequest().getMethod().name();
+        String urlPath = getUrlPath(exchange);
+        if (!checkPermission(exchange, method, urlPath)) {
+            logger.warn("Permission denied for {} {}", method, urlPath);
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Insufficient permissions"));
+        }
+
+        if (!jwtConfig.isRemoteRevocationCheck()) {
+            return Mono.just(injectUserIdHeader(exchange));
+        }
+
+        return checkExchangeValidToken(exchange).flatMap(valid -> {
+            if (!valid.isValid()) {
+                return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, valid.getErrorMessage()));
+            }
+            return Mono.just(injectUserIdHeader(exchange));
+        });
+    }
+
+    private Mono<ServerWebExchange> authorizeRemote(ServerWebExchange exchange) {
+        return checkExchangeValidToken(exchange).flatMap(valid -> {
+            if (!valid.isValid()) {
+                return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, valid.getErrorMessage()));
+            }
+
+            // Local permission check using JWT claims — no extra DB call
+            String method = exchange.getRequest().getMethod().name();
+            String urlPath = getUrlPath(exchange);
+            if (!checkPermission(exchange, method, urlPath)) {
+                logger.warn("Permission denied for {} {}", method, urlPath);
+                return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Insufficient permissions"));
+            }
+
+            return Mono.just(injectUserIdHeader(exchange));
+        });
+    }
+
+    private ValidationError validateLocally(ServerWebExchange exchange) {
+        try {
+            Claims claims = resolveClaims(exchange);
+            if (revokedSessions.isRevoked(claims.get("sid", String.class))) {
+                return new ValidationError(false, "Session revoked");
+            }
+            return new ValidationError(true, null);
+        } catch (ExpiredJwtException e) {
+            return new ValidationError(false, "Token expired");
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.warn("Invalid token: {}", e.getMessage());
+            return new ValidationError(false, "Invalid token");
+        }
+    }
+
+    /**
+     * Devuelve los claims guardados en el exchange o, si aún no existen, verifica el token
+     * con el parser cacheado y los guarda en {@link #JWT_CLAIMS_ATTR}.
+     */
+    private Claims resolveClaims(ServerWebExchange exchange) {
+        Claims claims = exchange.getAttribute(JWT_CLAIMS_ATTR);
+        if (claims == null) {
+            String token = getTokenHeader(exchange).substring(7); // remove "Bearer "
+            claims = jwtParser().parseSignedClaims(token).getPayload();
+            exchange.getAttributes().put(JWT_CLAIMS_ATTR, claims);
+        }
+        return claims;
+    }
+
+    private JwtParser jwtParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            SecretKey signingKey = Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
+            parser = Jwts.parser().verifyWith(signingKey).build();
+            jwtParser = parser;
+        }
+        return parser;
+    }
+
+    private void stopTimer(Timer.Sample sample, String outcome) {
+        sample.stop(Timer.builder("gateway.auth.filter")
+                .description("Tiempo de autenticación y autorización por request en AuthFilter")
+                .tag("mode", jwtConfig.isLocalValidation() ? "local" : "remote")
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
     /**
      * Returns true if the request is allowed to proceed.
-     * Matches the route against PERMISSION_MAP by prefix. If the route requires a permission
-     * that the JWT doesn't contain → returns false. If the route is not in the map → pass.
+     * Looks up the most specific rule for the route in the compiled permission trie. If the route
+     * requires a permission that the JWT doesn't contain → returns false. If no rule applies → pass.
      */
     private boolean checkPermission(ServerWebExchange exchange, String method, String urlPath) {
-        Set<String> userPermissions = extractPermissions(exchange);
-
-        for (Map.Entry<String, String> entry : PERMISSION_MAP.entrySet()) {
-            String[] parts = entry.getKey().split(":", 2);
-            String mapMethod = parts[0];
-            String mapPath   = parts[1];
-
-            if (method.equalsIgnoreCase(mapMethod) && urlPath.startsWith(mapPath)) {
-                String required = entry.getValue();
-                boolean hasPermission = userPermissions.contains(required);
-                if (!hasPermission) {
-                    logger.warn("Missing permission '{}' for {} {}", required, method, urlPath);
-                }
-                return hasPermission;
-            }
+        String required = permissionTrie.requiredPermission(method, urlPath);
+        if (required == null) {
+            // Route not in rules — any authenticated user can access
+            return true;
+        }
+        boolean hasPermission = extractPermissions(exchange).contains(required);
+        if (!hasPermission) {
+            logger.warn("Missing permission '{}' for {} {}", required, method, urlPath);
+        }
+        return hasPermission;
+    }
+
+    private static Map<String, String> buildPermissionRules(PermissionProperties properties) {
+        Map<String, String> rules = new LinkedHashMap<>();
+        if (!properties.isReplaceDefaults()) {
+            rules.putAll(DEFAULT_PERMISSIONS);
+        }
+        for (PermissionProperties.Rule rule : properties.getRules()) {
+            rules.put(rule.getMethod() + ":" + rule.getPath(), rule.getPermission());
         }
-        // Route not in map — any authenticated user can access
-        return true;
+        return rules;
     }
 
     private Set<String> extractPermissions(ServerWebExchange exchange) {
         try {
-            String tokenHeader = getTokenHeader(exchange);
-            String token = tokenHeader.substring(7); // remove "Bearer "
-            Claims claims = Jwts.parser()
-                    .verifyWith(Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8)))
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            Claims claims = resolveClaims(exchange);
             Object perms = claims.get("permissions");
             if (perms instanceof List) {
                 return new HashSet<>((List<String>) perms);
@@ -305,16 +420,27 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
 
     private Mono<ValidationError> checkExchangeValidToken(ServerWebExchange exchange) {
         String tokenHeader = getTokenHeader(exchange);
-        return webClient.build()
+        Claims claims;
+        try {
+            claims = resolveClaims(exchange);
+        } catch (Exception e) {
+            claims = null;
+        }
+        return validationCache.get(tokenHeader, claims, () -> requestTokenValidation(tokenHeader));
+    }
+
+    private Mono<ValidationError> requestTokenValidation(String tokenHeader) {
+        String token = tokenHeader.substring(7); // remove "Bearer "
+        return authWebClient
                 .post()
-                .uri(uriBuilder -> uriBuilder
-                        .scheme("lb")
-                        .host("mcsv-auth")
-                        .path("/v1/validateToken")
-                        .queryParam("jwt", tokenHeader)
-                        .build())
+                .uri("/v1/validateTokens")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new TokenValidationRequest(List.of(token)))
                 .retrieve()
-                .bodyToMono(ValidationError.class)
+                .bodyToMono(VALIDATION_LIST_TYPE)
+                .map(results -> results.isEmpty()
+                        ? new ValidationError(false, "Invalid token")
+                        : results.getFirst())
                 .onErrorResume(e -> {
                     logger.error("Exception during token validation", e);
                     return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage()));
@@ -323,13 +449,7 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
 
     private ServerWebExchange injectUserIdHeader(ServerWebExchange exchange) {
         try {
-            String tokenHeader = getTokenHeader(exchange);
-            String token = tokenHeader.substring(7); // remove "Bearer "
-            Claims claims = Jwts.parser()
-                    .verifyWith(Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8)))
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            Claims claims = resolveClaims(exchange);
             Object userId = claims.get("userId");
             if (userId != null) {
                 ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
@@ -343,27 +463,4 @@ public class AuthFilter extends AbstractGatewayFilterFactory<AuthFilter.Config>
         }
         return exchange;
     }
-
-    private Mono<ValidationError> checkExchangeValidUrl(ServerWebExchange exchange) {
-        String token = getTokenHeader(exchange);
-        String method = exchange.getRequest().getMethod().name();
-        String urlPath = getUrlPath(exchange);
-
-        return webClient.build()
-                .post()
-                .uri(uriBuilder -> uriBuilder
-                        .scheme("lb")
-                        .host("mcsv-auth")
-                        .path("/v1/validateTokenUrl")
-                        .queryParam("jwt", token)
-                        .queryParam("urlPath", urlPath)
-                        .queryParam("method", method)
-                        .build())
-                .retrieve()
-                .bodyToMono(ValidationError.class)
-                .onErrorResume(e -> {
-                    logger.error("Exception during url validation", e);
-                    return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage()));
-                });
-    }
 }
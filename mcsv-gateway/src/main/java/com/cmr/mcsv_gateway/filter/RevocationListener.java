@@ -0,0 +1,100 @@
+package com.cmr.mcsv_gateway.filter;
+
+import com.cmr.mcsv_gateway.config.JwtConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Escucha las revocaciones que publica mcsv-auth en Redis ({@code user:<userId>} o
+ * {@code session:<userId>:<sessionId>}) y las aplica a la cache de validaciones y al registro de
+ * sesiones revocadas del gateway.
+ */
+@Component
+public class RevocationListener {
+
+    private final Logger logger = LoggerFactory.getLogger(RevocationListener.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final TokenValidationCache validationCache;
+    private final RevokedSessionRegistry revokedSessions;
+    private final String channel;
+    private final String revokedSessionsKey;
+    private Disposable subscription;
+
+    public RevocationListener(ReactiveStringRedisTemplate redisTemplate,
+                              TokenValidationCache validationCache,
+                              RevokedSessionRegistry revokedSessions,
+                              JwtConfig jwtConfig) {
+        this.redisTemplate = redisTemplate;
+        this.validationCache = validationCache;
+        this.revokedSessions = revokedSessions;
+        this.channel = jwtConfig.getRevocationChannel();
+        this.revokedSessionsKey = jwtConfig.getRevokedSessionsKey();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        // defer: si Redis no está disponible al arrancar, el fallo entra en el retry en vez de tumbar el contexto
+        subscription = Mono.defer(() -> redisTemplate.listenToChannelLater(channel))
+                .doOnNext(messages -> {
+                    logger.info("Listening revocations on Redis channel '{}'", channel);
+                    // Ya suscritos: lo revocado antes (o mientras estábamos desconectados) se lee del sorted set
+                    loadRevokedSessions();
+                })
+                .flatMapMany(messages -> messages)
+                .doOnError(e -> {
+                    // Mientras no hay suscripción no llegan revocaciones: se descarta la cache completa
+                    logger.warn("Revocation channel error: {}", e.getMessage());
+                    validationCache.invalidateAll();
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(message -> handle(message.getMessage()));
+    }
+
+    void handle(String message) {
+        String[] parts = message.split(":");
+        try {
+            if (parts.length == 2 && "user".equals(parts[0])) {
+                validationCache.invalidateUser(Long.valueOf(parts[1]));
+            } else if (parts.length == 3 && "session".equals(parts[0])) {
+                revokedSessions.revoke(parts[2]);
+                revokedSessions.purgeExpired();
+                validationCache.invalidateSession(Long.valueOf(parts[1]), parts[2]);
+            } else {
+                logger.warn("Unknown revocation message: {}", message);
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid revocation message: {}", message);
+        }
+    }
+
+    private void loadRevokedSessions() {
+        Range<Double> active = Range.rightUnbounded(Range.Bound.inclusive((double) System.currentTimeMillis()));
+        redisTemplate.opsForZSet().rangeByScoreWithScores(revokedSessionsKey, active)
+                .filter(tuple -> tuple.getValue() != null && tuple.getScore() != null)
+                .collectMap(ZSetOperations.TypedTuple::getValue, tuple -> tuple.getScore().longValue())
+                .subscribe(snapshot -> {
+                    revokedSessions.merge(snapshot);
+                    logger.info("Loaded {} revoked sessions from '{}'", snapshot.size(), revokedSessionsKey);
+                }, e -> logger.warn("Could not load revoked sessions: {}", e.getMessage()));
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
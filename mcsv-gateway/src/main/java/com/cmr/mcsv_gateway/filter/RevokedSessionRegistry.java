@@ -0,0 +1,131 @@
+package com.cmr.mcsv_gateway.filter;
+
+import com.cmr.mcsv_gateway.config.JwtConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sesiones revocadas replicadas desde mcsv-auth. Un filtro de Bloom responde sin coste la gran
+ * mayoría de consultas (sid no revocado); solo ante un posible positivo se consulta el set exacto,
+ * que guarda hasta cuándo debe rechazarse cada sid (vida máxima del access token).
+ */
+@Component
+public class RevokedSessionRegistry {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final Map<String, Long> revokedUntil = new ConcurrentHashMap<>();
+    private final int expectedEntries;
+    private final long tokenLifetimeMillis;
+    private volatile BloomFilter bloomFilter;
+
+    public RevokedSessionRegistry(JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this.expectedEntries = jwtConfig.getRevokedSessionsExpected();
+        this.tokenLifetimeMillis = jwtConfig.getExpireAt() * 60 * 1000;
+        this.bloomFilter = new BloomFilter(expectedEntries, FALSE_POSITIVE_RATE);
+        meterRegistry.gauge("gateway.auth.revoked.sessions", revokedUntil, Map::size);
+    }
+
+    public boolean isRevoked(String sessionId) {
+        if (sessionId == null || !bloomFilter.mightContain(sessionId)) {
+            return false;
+        }
+        Long until = revokedUntil.get(sessionId);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    /**
+     * Registra una revocación recibida por pub/sub; se rechaza durante la vida máxima del token.
+     */
+    public void revoke(String sessionId) {
+        revoke(sessionId, System.currentTimeMillis() + tokenLifetimeMillis);
+    }
+
+    public synchronized void revoke(String sessionId, long until) {
+        revokedUntil.merge(sessionId, until, Math::max);
+        bloomFilter.put(sessionId);
+    }
+
+    /**
+     * Incorpora la instantánea leída de Redis (arranque o reconexión). Se fusiona en lugar de
+     * reemplazar para no perder revocaciones recibidas por pub/sub mientras se leía.
+     */
+    public synchronized void merge(Map<String, Long> snapshot) {
+        snapshot.forEach((sessionId, until) -> revokedUntil.merge(sessionId, until, Math::max));
+        purgeExpired();
+        rebuild();
+    }
+
+    /**
+     * Elimina los sid cuyos tokens ya expiraron y reconstruye el filtro (los de Bloom no admiten borrado).
+     */
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        if (revokedUntil.values().removeIf(until -> until <= now)) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, revokedUntil.size() * 2), FALSE_POSITIVE_RATE);
+        revokedUntil.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+    }
+
+    private static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final int bitCount;
+        private final int hashCount;
+
+        private BloomFilter(int expectedEntries, double falsePositiveRate) {
+            long optimalBits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = (int) Math.max(64, Math.min(optimalBits, Integer.MAX_VALUE - 63));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * Math.log(2)));
+            this.bits = new AtomicLongArray((bitCount + 63) / 64);
+        }
+
+        private void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int index = Math.floorMod(h1 + i * h2, bitCount);
+                long mask = 1L << (index & 63);
+                bits.getAndUpdate(index >>> 6, word -> word | mask);
+            }
+        }
+
+        private boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int index = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get(index >>> 6) & (1L << (index & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a de 64 bits con mezcla final (fmix64 de MurmurHash3)
+        private static long hash(String value) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93fe1a85ec5L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.cmr.mcsv_gateway.filter;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Árbol de permisos por método HTTP y segmentos de path, compilado una vez al arrancar.
+ * La búsqueda recorre el path una sola vez y devuelve el permiso del prefijo más largo
+ * (por segmentos completos), de modo que el resultado no depende del orden de las reglas.
+ */
+public final class RoutePermissionTrie {
+
+    private final Map<String, Node> roots = new HashMap<>();
+    private int size;
+
+    private RoutePermissionTrie() {
+    }
+
+    /**
+     * Compila reglas con formato {@code "METHOD:/path" -> "RESOURCE:ACTION"}.
+     */
+    public static RoutePermissionTrie compile(Map<String, String> rules) {
+        RoutePermissionTrie trie = new RoutePermissionTrie();
+        rules.forEach((key, permission) -> {
+            int separator = key.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid permission rule (expected METHOD:/path): " + key);
+            }
+            trie.add(key.substring(0, separator), key.substring(separator + 1), permission);
+        });
+        return trie;
+    }
+
+    private void add(String method, String path, String permission) {
+        Node node = roots.computeIfAbsent(method.toUpperCase(Locale.ROOT), m -> new Node());
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = node.children.computeIfAbsent(path.substring(start, end), s -> new Node());
+            }
+            start = end + 1;
+        }
+        if (node.permission == null) {
+            size++;
+        }
+        node.permission = permission;
+    }
+
+    /**
+     * Devuelve el permiso requerido por la regla más específica que cubre la ruta,
+     * o {@code null} si ninguna regla aplica (cualquier usuario autenticado puede acceder).
+     */
+    public String requiredPermission(String method, String path) {
+        Node node = roots.get(method.toUpperCase(Locale.ROOT));
+        if (node == null) {
+            return null;
+        }
+        String match = node.permission;
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = node.children.get(path.substring(start, end));
+                if (node == null) {
+                    break;
+                }
+                if (node.permission != null) {
+                    match = node.permission;
+                }
+            }
+            start = end + 1;
+        }
+        return match;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private String permission;
+    }
+}
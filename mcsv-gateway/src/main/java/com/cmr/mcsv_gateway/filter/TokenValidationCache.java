@@ -0,0 +1,216 @@
+package com.cmr.mcsv_gateway.filter;
+
+import com.cmr.mcsv_gateway.config.JwtConfig;
+import com.cmr.mcsv_gateway.model.ValidationError;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cache de corta duración de las validaciones remotas contra mcsv-auth, indexada por hash del token.
+ * Las peticiones concurrentes con el mismo token comparten una única llamada (single-flight) y las
+ * revocaciones publicadas por mcsv-auth invalidan las entradas del usuario o la sesión afectada.
+ * Es un LRU acotado: la consulta es O(1) y solo al insertar con la cache llena se expulsa la entrada
+ * usada hace más tiempo. Los índices por usuario y por sesión evitan recorrer la cache al invalidar.
+ */
+@Component
+public class TokenValidationCache {
+
+    private final Logger logger = LoggerFactory.getLogger(TokenValidationCache.class);
+
+    // Orden de acceso: la primera entrada es la menos usada recientemente. Todo bajo el monitor de this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Set<String>> keysByUser = new HashMap<>();
+    private final Map<String, Set<String>> keysBySession = new HashMap<>();
+    private final long ttlMillis;
+    private final int maxSize;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public TokenValidationCache(JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this.ttlMillis = jwtConfig.getValidationCacheTtl().toMillis();
+        this.maxSize = jwtConfig.getValidationCacheMaxSize();
+        this.hits = Counter.builder("gateway.auth.validation.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("gateway.auth.validation.cache").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("gateway.auth.validation.cache.evictions").register(meterRegistry);
+        meterRegistry.gauge("gateway.auth.validation.cache.size", this, TokenValidationCache::size);
+    }
+
+    /**
+     * Devuelve la validación cacheada del token o ejecuta {@code loader} una sola vez para todas
+     * las peticiones concurrentes. Sin claims (token no parseable localmente) no se cachea.
+     */
+    public Mono<ValidationError> get(String token, Claims claims, Supplier<Mono<ValidationError>> loader) {
+        if (claims == null || ttlMillis <= 0 || maxSize <= 0) {
+            return loader.get();
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAt = resolveExpiry(claims, now);
+        if (expiresAt <= now) {
+            return loader.get();
+        }
+
+        String key = hash(token);
+        Entry entry;
+        boolean created = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || entry.expiresAt() <= now) {
+                if (entry != null) {
+                    remove(key);
+                }
+                // loader solo ensambla la llamada: se suscribe fuera del monitor
+                entry = new Entry(loader.get().cache(), expiresAt, userId(claims), sessionId(claims));
+                insert(key, entry);
+                created = true;
+            }
+        }
+        (created ? misses : hits).increment();
+
+        // Los errores (mcsv-auth caído, timeout) no se cachean
+        Entry cached = entry;
+        return cached.result().doOnError(e -> removeIfSame(key, cached));
+    }
+
+    public void invalidateUser(Long userId) {
+        int removed;
+        synchronized (this) {
+            Set<String> keys = keysByUser.get(userId);
+            removed = keys == null ? 0 : removeAll(List.copyOf(keys));
+        }
+        logger.debug("Validation cache: invalidated {} entries for user {}", removed, userId);
+    }
+
+    /**
+     * Invalida las entradas de la sesión. Los tokens sin claim de sesión se invalidan por usuario.
+     */
+    public synchronized void invalidateSession(Long userId, String sessionId) {
+        List<String> keys = new ArrayList<>();
+        Set<String> sessionKeys = keysBySession.get(sessionId);
+        if (sessionKeys != null) {
+            sessionKeys.stream()
+                    .filter(key -> Objects.equals(entries.get(key).userId(), userId))
+                    .forEach(keys::add);
+        }
+        Set<String> userKeys = keysByUser.get(userId);
+        if (userKeys != null) {
+            userKeys.stream()
+                    .filter(key -> entries.get(key).sessionId() == null)
+                    .forEach(keys::add);
+        }
+        removeAll(keys);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        keysByUser.clear();
+        keysBySession.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void insert(String key, Entry entry) {
+        entries.put(key, entry);
+        if (entry.userId() != null) {
+            keysByUser.computeIfAbsent(entry.userId(), id -> new HashSet<>()).add(key);
+        }
+        if (entry.sessionId() != null) {
+            keysBySession.computeIfAbsent(entry.sessionId(), id -> new HashSet<>()).add(key);
+        }
+        while (entries.size() > maxSize) {
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            unindex(evicted.getKey(), evicted.getValue());
+            evictions.increment();
+        }
+    }
+
+    private synchronized void removeIfSame(String key, Entry entry) {
+        // get() cuenta como acceso en el LRU, pero la entrada se elimina igualmente
+        if (entries.get(key) == entry) {
+            remove(key);
+        }
+    }
+
+    private int removeAll(List<String> keys) {
+        keys.forEach(this::remove);
+        return keys.size();
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            unindex(key, removed);
+        }
+    }
+
+    private void unindex(String key, Entry entry) {
+        if (entry.userId() != null) {
+            removeFromIndex(keysByUser, entry.userId(), key);
+        }
+        if (entry.sessionId() != null) {
+            removeFromIndex(keysBySession, entry.sessionId(), key);
+        }
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<String>> index, K indexKey, String key) {
+        Set<String> keys = index.get(indexKey);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            index.remove(indexKey);
+        }
+    }
+
+    private long resolveExpiry(Claims claims, long now) {
+        long expiresAt = now + ttlMillis;
+        Date expiration = claims.getExpiration();
+        return expiration != null ? Math.min(expiresAt, expiration.getTime()) : expiresAt;
+    }
+
+    private Long userId(Claims claims) {
+        Object userId = claims.get("userId");
+        return userId instanceof Number number ? number.longValue() : null;
+    }
+
+    private String sessionId(Claims claims) {
+        Object sid = claims.get("sid");
+        return sid != null ? sid.toString() : null;
+    }
+
+    private String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hashed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Entry(Mono<ValidationError> result, long expiresAt, Long userId, String sessionId) {
+    }
+}
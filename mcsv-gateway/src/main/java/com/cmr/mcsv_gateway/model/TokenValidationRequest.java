@@ -0,0 +1,22 @@
+package com.cmr.mcsv_gateway.model;
+
+import java.util.List;
+
+public class TokenValidationRequest {
+    private List<String> tokens;
+
+    public TokenValidationRequest() {
+    }
+
+    public TokenValidationRequest(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+}
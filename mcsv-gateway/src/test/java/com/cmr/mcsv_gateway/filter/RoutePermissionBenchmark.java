@@ -0,0 +1,64 @@
+package com.cmr.mcsv_gateway.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la búsqueda lineal sobre el mapa de permisos (implementación anterior de
+ * AuthFilter.checkPermission) con el árbol compilado. Requiere el perfil "benchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutePermissionBenchmark {
+
+    @Param({
+            "GET:/v1/api/user/detail/42",
+            "PUT:/v1/api/rrhh/attendance-marks/update",
+            "GET:/v1/api/project/unknown/path"
+    })
+    public String request;
+
+    private String method;
+    private String path;
+    private RoutePermissionTrie trie;
+
+    @Setup
+    public void setUp() {
+        int separator = request.indexOf(':');
+        method = request.substring(0, separator);
+        path = request.substring(separator + 1);
+        trie = RoutePermissionTrie.compile(AuthFilter.DEFAULT_PERMISSIONS);
+    }
+
+    @Benchmark
+    public String linearScan() {
+        for (Map.Entry<String, String> entry : AuthFilter.DEFAULT_PERMISSIONS.entrySet()) {
+            String[] parts = entry.getKey().split(":", 2);
+            if (method.equalsIgnoreCase(parts[0]) && path.startsWith(parts[1])) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String trie() {
+        return trie.requiredPermission(method, path);
+    }
+}
@@ -0,0 +1,131 @@
+package com.cmr.mcsv_gateway.filter;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("RoutePermissionTrie Tests")
+class RoutePermissionTrieTest {
+
+    private final RoutePermissionTrie trie = RoutePermissionTrie.compile(Map.of(
+            "GET:/v1/api/project/project", "PROJECT:READ",
+            "GET:/v1/api/project/project/cost-center", "PROJECT:COST",
+            "PUT:/v1/api/project/project", "PROJECT:UPDATE",
+            "GET:/v1/api/project/project-type", "PROJECT_TYPE:READ"
+    ));
+
+    // ---------------------------------------------------------------
+    // requiredPermission
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("requiredPermission()")
+    class RequiredPermission {
+
+        @Test
+        @DisplayName("exact path: returns the rule permission")
+        void exactPath() {
+            assertThat(trie.requiredPermission("GET", "/v1/api/project/project")).isEqualTo("PROJECT:READ");
+        }
+
+        @Test
+        @DisplayName("child path: inherits the closest rule")
+        void childPath() {
+            assertThat(trie.requiredPermission("GET", "/v1/api/project/project/15")).isEqualTo("PROJECT:READ");
+            assertThat(trie.requiredPermission("PUT", "/v1/api/project/project/15/status")).isEqualTo("PROJECT:UPDATE");
+        }
+
+        @Test
+        @DisplayName("nested rule: the most specific rule wins")
+        void mostSpecificRule() {
+            assertThat(trie.requiredPermission("GET", "/v1/api/project/project/cost-center/3")).isEqualTo("PROJECT:COST");
+        }
+
+        @Test
+        @DisplayName("sibling with dash: does not match a rule that is only a raw-string prefix")
+        void siblingDash() {
+            assertThat(trie.requiredPermission("GET", "/v1/api/project/project-type/paged")).isEqualTo("PROJECT_TYPE:READ");
+            assertThat(trie.requiredPermission("PUT", "/v1/api/project/project-type/1/status")).isNull();
+            assertThat(trie.requiredPermission("GET", "/v1/api/project/projects")).isNull();
+        }
+
+        @Test
+        @DisplayName("method mismatch: rules of another method do not apply")
+        void methodMismatch() {
+            assertThat(trie.requiredPermission("DELETE", "/v1/api/project/project/1")).isNull();
+            assertThat(trie.requiredPermission("get", "/v1/api/project/project")).isEqualTo("PROJECT:READ");
+        }
+
+        @Test
+        @DisplayName("unrelated path: returns null")
+        void unrelatedPath() {
+            assertThat(trie.requiredPermission("GET", "/v1/api/user/paged")).isNull();
+        }
+
+        @Test
+        @DisplayName("trailing or repeated slashes are ignored")
+        void slashes() {
+            assertThat(trie.requiredPermission("GET", "/v1/api/project//project/")).isEqualTo("PROJECT:READ");
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // compile
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("compile()")
+    class Compile {
+
+        @Test
+        @DisplayName("rule without method: throws IllegalArgumentException")
+        void invalidRule() {
+            assertThatThrownBy(() -> RoutePermissionTrie.compile(Map.of("/v1/api/user", "USER:READ")))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        @Test
+        @DisplayName("size counts distinct rules")
+        void size() {
+            assertThat(trie.size()).isEqualTo(4);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // AuthFilter default rules
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("AuthFilter.DEFAULT_PERMISSIONS")
+    class DefaultRules {
+
+        private final RoutePermissionTrie defaults = RoutePermissionTrie.compile(AuthFilter.DEFAULT_PERMISSIONS);
+
+        @Test
+        @DisplayName("status endpoints of project catalogs require their own UPDATE permission")
+        void catalogStatusEndpoints() {
+            assertThat(defaults.requiredPermission("PUT", "/v1/api/project/project-type/7/status"))
+                    .isEqualTo("PROJECT_TYPE:UPDATE");
+            assertThat(defaults.requiredPermission("PUT", "/v1/api/project/project-status/7/status"))
+                    .isEqualTo("PROJECT_STATUS:UPDATE");
+            assertThat(defaults.requiredPermission("PUT", "/v1/api/project/project-specialty/7/status"))
+                    .isEqualTo("PROJECT_SPECIALTY:UPDATE");
+        }
+
+        @Test
+        @DisplayName("project routes keep PROJECT permissions")
+        void projectRoutes() {
+            assertThat(defaults.requiredPermission("PUT", "/v1/api/project/project/7/status")).isEqualTo("PROJECT:UPDATE");
+            assertThat(defaults.requiredPermission("GET", "/v1/api/project/project/paged")).isEqualTo("PROJECT:READ");
+        }
+
+        @Test
+        @DisplayName("attendance siblings resolve to their own rules")
+        void attendanceSiblings() {
+            assertThat(defaults.requiredPermission("GET", "/v1/api/rrhh/attendance-statuses/select"))
+                    .isEqualTo("ATTENDANCE_STATUS:READ");
+            assertThat(defaults.requiredPermission("GET", "/v1/api/rrhh/attendance/paged")).isEqualTo("ATTENDANCE:READ");
+        }
+    }
+}
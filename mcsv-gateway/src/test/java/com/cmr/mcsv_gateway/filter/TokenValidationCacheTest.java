@@ -0,0 +1,184 @@
+package com.cmr.mcsv_gateway.filter;
+
+import com.cmr.mcsv_gateway.config.JwtConfig;
+import com.cmr.mcsv_gateway.model.ValidationError;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("TokenValidationCache Tests")
+class TokenValidationCacheTest {
+
+    private static final ValidationError VALID = new ValidationError(true, null);
+
+    private TokenValidationCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = cache(3);
+        loads = new AtomicInteger();
+    }
+
+    private TokenValidationCache cache(int maxSize) {
+        JwtConfig config = new JwtConfig();
+        config.setValidationCacheTtl(Duration.ofMinutes(1));
+        config.setValidationCacheMaxSize(maxSize);
+        return new TokenValidationCache(config, new SimpleMeterRegistry());
+    }
+
+    private Claims claims(long userId, String sid) {
+        return Jwts.claims().add("userId", userId).add("sid", sid).build();
+    }
+
+    private Supplier<Mono<ValidationError>> loader() {
+        return () -> Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return VALID;
+        });
+    }
+
+    private void load(String token, long userId, String sid) {
+        cache.get(token, claims(userId, sid), loader()).block();
+    }
+
+    // ---------------------------------------------------------------
+    // get
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("get()")
+    class Get {
+
+        @Test
+        @DisplayName("same token: loader runs once and later calls hit the cache")
+        void hit() {
+            load("t1", 1, "s1");
+            load("t1", 1, "s1");
+
+            assertThat(loads).hasValue(1);
+            assertThat(cache.size()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("full cache: evicts the least recently used entry on insert")
+        void lruEviction() {
+            load("t1", 1, "s1");
+            load("t2", 2, "s2");
+            load("t3", 3, "s3");
+            load("t1", 1, "s1");   // t1 pasa a ser la más reciente
+
+            load("t4", 4, "s4");
+
+            assertThat(cache.size()).isEqualTo(3);
+            assertThat(loads).hasValue(4);
+            load("t1", 1, "s1");
+            assertThat(loads).hasValue(4);
+            load("t2", 2, "s2");
+            assertThat(loads).hasValue(5);
+        }
+
+        @Test
+        @DisplayName("full cache: cached tokens are still served")
+        void fullCacheStillHits() {
+            load("t1", 1, "s1");
+            load("t2", 2, "s2");
+            load("t3", 3, "s3");
+
+            load("t2", 2, "s2");
+
+            assertThat(loads).hasValue(3);
+        }
+
+        @Test
+        @DisplayName("errors are not cached")
+        void errorsNotCached() {
+            Claims claims = claims(1, "s1");
+            assertThatThrownBy(() -> cache.get("t1", claims, () -> Mono.error(new IllegalStateException("down"))).block())
+                    .isInstanceOf(IllegalStateException.class);
+
+            assertThat(cache.size()).isZero();
+        }
+
+        @Test
+        @DisplayName("no claims: always delegates to the loader")
+        void noClaims() {
+            cache.get("t1", null, loader()).block();
+            cache.get("t1", null, loader()).block();
+
+            assertThat(loads).hasValue(2);
+            assertThat(cache.size()).isZero();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // invalidation
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("invalidation")
+    class Invalidation {
+
+        @BeforeEach
+        void fill() {
+            cache = cache(10);
+            load("a1", 1, "s1");
+            load("a2", 1, "s2");
+            load("b1", 2, "s3");
+        }
+
+        @Test
+        @DisplayName("invalidateUser removes only that user's entries")
+        void invalidateUser() {
+            cache.invalidateUser(1L);
+
+            assertThat(cache.size()).isEqualTo(1);
+            load("b1", 2, "s3");
+            assertThat(loads).hasValue(3);
+        }
+
+        @Test
+        @DisplayName("invalidateSession removes the session and the user's tokens without sid")
+        void invalidateSession() {
+            cache.get("a3", Jwts.claims().add("userId", 1L).build(), loader()).block();
+
+            cache.invalidateSession(1L, "s1");
+
+            assertThat(cache.size()).isEqualTo(2);
+            load("a2", 1, "s2");
+            assertThat(loads).hasValue(4);
+            load("a1", 1, "s1");
+            assertThat(loads).hasValue(5);
+        }
+
+        @Test
+        @DisplayName("invalidateSession ignores a sid that belongs to another user")
+        void invalidateSessionOtherUser() {
+            cache.invalidateSession(2L, "s1");
+
+            assertThat(cache.size()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("evicted entries leave the indexes too")
+        void evictionUnindexes() {
+            TokenValidationCache small = cache(1);
+            small.get("x", claims(1, "s1"), loader()).block();
+            small.get("y", claims(2, "s2"), loader()).block();
+
+            small.invalidateUser(1L);
+            small.invalidateSession(1L, "s1");
+
+            assertThat(small.size()).isEqualTo(1);
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package com.crm.mcsv_user.controller;
 
-import com.crm.common.client.EventBridgeNotificationClient;
+import com.crm.common.outbox.MessageDispatcher;
 import com.crm.common.dto.BulkImportResult;
+import com.crm.common.dto.CursorPageResponse;
+import com.crm.mcsv_user.dto.AuthenticateResponse;
 import com.crm.mcsv_user.dto.CredentialsRequest;
 import com.crm.mcsv_user.dto.CreateUserRequest;
 import com.crm.common.dto.PagedResponse;
 import com.crm.common.dto.SendNotificationRequest;
 import com.crm.mcsv_user.dto.UpdateUserRequest;
 import com.crm.mcsv_user.dto.UpdatePasswordRequest;
+import com.crm.mcsv_user.dto.UserAuthoritiesDTO;
 import com.crm.mcsv_user.dto.UserDTO;
 import com.crm.mcsv_user.dto.UserResponse;
 import com.crm.mcsv_user.service.UserService;
@@ -32,6 +35,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -44,7 +48,9 @@ import java.util.Set;
 public class UserController {
 
     private final UserService userService;
-    private final EventBridgeNotificationClient eventBridgeNotificationClient;
+    private final MessageDispatcher messageDispatcher;
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
 
     private static final Set<String> ALLOWED_SORT_FIELDS = Set.of(
             "username", "firstName", "lastName", "email", "phoneNumber",
@@ -63,13 +69,32 @@ public class UserController {
             @RequestParam(defaultValue = "createdAt") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDir) {
         String safeSortBy = ALLOWED_SORT_FIELDS.contains(sortBy) ? sortBy : "createdAt";
-        Sort sort = sortDir.equalsIgnoreCase("asc") ? Sort.by(safeSortBy).ascending() : Sort.by(safeSortBy).descending();
+        // El orden por rol usa la columna desnormalizada primaryRole
+        String sortProperty = "roles".equals(safeSortBy) ? "primaryRole" : safeSortBy;
+        Sort sort = sortDir.equalsIgnoreCase("asc") ? Sort.by(sortProperty).ascending() : Sort.by(sortProperty).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
         Page<UserResponse> result = userService.filterUsers(name, email, status, roleId, pageable, safeSortBy, sortDir);
         Map<String, Long> stats = userService.getUserStats();
         return ResponseEntity.ok(PagedResponse.of(result, stats.get("total"), stats.get("active")));
     }
 
+    @GetMapping("/cursor")
+    @Operation(summary = "Get users (cursor)", description = "Keyset-paginated list of users; pass nextCursor back as cursor to get the next page. The total is only computed when includeCount=true")
+    public ResponseEntity<CursorPageResponse<UserResponse>> getUsersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) Boolean status,
+            @RequestParam(required = false) Long roleId,
+            @RequestParam(defaultValue = "createdAt") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeCount) {
+        int safeSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        return ResponseEntity.ok(userService.scrollUsers(name, email, status, roleId, cursor, safeSize,
+                sortBy, sortDir, includeCount));
+    }
+
     @GetMapping("/detail/{id}")
     @Operation(summary = "Get user by ID", description = "Retrieve a user by their ID")
     public ResponseEntity<UserDTO> getUserById(@PathVariable Long id) {
@@ -77,6 +102,12 @@ public class UserController {
         return ResponseEntity.ok(user);
     }
 
+    @GetMapping("/detail/{id}/authorities")
+    @Operation(summary = "Get user authorities", description = "Retrieve the effective roles and permissions of a user (cached)")
+    public ResponseEntity<UserAuthoritiesDTO> getUserAuthorities(@PathVariable Long id) {
+        return ResponseEntity.ok(userService.getUserAuthorities(id));
+    }
+
     @GetMapping("/detail/batch")
     @Operation(summary = "Get users by IDs (batch)", description = "Retrieve multiple users by their IDs in a single request")
     public ResponseEntity<List<UserDTO>> getUsersByIds(@RequestParam List<Long> ids) {
@@ -97,6 +128,13 @@ public class UserController {
         return ResponseEntity.ok(user);
     }
 
+    @GetMapping("/detail/login")
+    @Operation(summary = "Get user by username or email", description = "Retrieve a user by username or email in a single lookup")
+    public ResponseEntity<UserDTO> getUserByUsernameOrEmail(@RequestParam String login) {
+        UserDTO user = userService.getUserByUsernameOrEmail(login);
+        return ResponseEntity.ok(user);
+    }
+
     @PostMapping("/create")
     @Operation(summary = "Create user", description = "Create a new user")
     public ResponseEntity<UserResponse> createUser(@Valid @RequestBody CreateUserRequest request) {
@@ -118,7 +156,7 @@ public class UserController {
             @Valid @RequestBody UpdateUserRequest request) {
         UserResponse updatedUser = userService.updateUser(request.getId(), request);
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(updatedUser.getId())
                     .title("Perfil actualizado")
                     .message("La información de tu perfil ha sido actualizada exitosamente.")
@@ -158,6 +196,15 @@ public class UserController {
         return ResponseEntity.ok(isValid);
     }
 
+    @PostMapping("/authenticate")
+    @Operation(summary = "Authenticate", description = "Validate credentials and return the user with roles and permissions")
+    public ResponseEntity<AuthenticateResponse> authenticate(@RequestBody CredentialsRequest credentials) {
+        return ResponseEntity.ok(userService.authenticate(
+                credentials.getUsernameOrEmail(),
+                credentials.getPassword()
+        ));
+    }
+
     @PostMapping("/update-password")
     @Operation(summary = "Update password", description = "Update user password")
     public ResponseEntity<Void> updatePassword(@Valid @RequestBody UpdatePasswordRequest request) {
@@ -197,11 +244,11 @@ public class UserController {
 
     @GetMapping("/export/csv")
     @Operation(summary = "Exportar usuarios a CSV")
-    public ResponseEntity<byte[]> exportCsv() {
+    public ResponseEntity<StreamingResponseBody> exportCsv() {
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\"")
                 .contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
-                .body(userService.exportCsv());
+                .body(userService::exportCsv);
     }
 
     @PostMapping(value = "/import/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
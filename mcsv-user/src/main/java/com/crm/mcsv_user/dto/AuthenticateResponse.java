@@ -0,0 +1,16 @@
+package com.crm.mcsv_user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AuthenticateResponse {
+
+    private boolean authenticated;
+    private UserDTO user;
+}
@@ -0,0 +1,29 @@
+package com.crm.mcsv_user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * Roles y permisos efectivos de un usuario, ya aplanados, con los datos básicos de perfil
+ * que acompañan a un access token.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserAuthoritiesDTO {
+    private Long userId;
+    private String username;
+    private String email;
+    private String firstName;
+    private String lastName;
+    private String phoneNumber;
+    private String avatarUrl;
+    private Boolean enabled;
+    private Set<String> roles;
+    private Set<String> permissions;
+}
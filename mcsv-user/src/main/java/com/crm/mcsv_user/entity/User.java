@@ -79,6 +79,10 @@ public class User {
     @Builder.Default
     private Set<Role> roles = new HashSet<>();
 
+    // Rol principal desnormalizado (el menor nombre de rol) para ordenar y paginar por rol con índice
+    @Column(name = "primary_role", length = 50)
+    private String primaryRole;
+
     @Column(name = "avatar_url", length = 500)
     private String avatarUrl;
 
@@ -93,6 +97,7 @@ public class User {
 
     @PrePersist
     protected void onCreate() {
+        refreshPrimaryRole();
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
     }
@@ -105,6 +110,19 @@ public class User {
     // Helper methods
     public void addRole(Role role) {
         roles.add(role);
+        refreshPrimaryRole();
+    }
+
+    public void setRoles(Set<Role> roles) {
+        this.roles = roles;
+        refreshPrimaryRole();
+    }
+
+    private void refreshPrimaryRole() {
+        primaryRole = roles == null ? "" : roles.stream()
+                .map(Role::getName)
+                .min(String::compareTo)
+                .orElse("");
     }
 
 }
@@ -0,0 +1,15 @@
+package com.crm.mcsv_user.event;
+
+/**
+ * Cambio en los roles o permisos efectivos: de todos los usuarios de un rol o de un usuario concreto.
+ */
+public record AuthoritiesChangedEvent(Long roleId, Long userId) {
+
+    public static AuthoritiesChangedEvent forRole(Long roleId) {
+        return new AuthoritiesChangedEvent(roleId, null);
+    }
+
+    public static AuthoritiesChangedEvent forUser(Long userId) {
+        return new AuthoritiesChangedEvent(null, userId);
+    }
+}
@@ -1,32 +1,28 @@
 package com.crm.mcsv_user.event;
 
-import com.crm.common.client.EventBridgeNotificationClient;
+import com.crm.common.outbox.MessageDispatcher;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.ObjectProvider;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+/**
+ * Entrega los lotes al MessageDispatcher antes del commit: con el outbox activo se guardan en
+ * la misma transacción que los datos que los originan; sin él se envían tras el commit.
+ */
 @Component
 @RequiredArgsConstructor
-@Slf4j
 public class NotificationEventListener {
 
-    private final ObjectProvider<EventBridgeNotificationClient> clientProvider;
+    private final MessageDispatcher messageDispatcher;
 
-    @Async("notificationExecutor")
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
     public void handle(NotificationBatchEvent event) {
-        if (event.notifications() == null || event.notifications().isEmpty()) {
-            return;
-        }
-        EventBridgeNotificationClient client = clientProvider.getIfAvailable();
-        if (client == null) {
-            log.debug("EventBridgeNotificationClient not available; skipping {} notifications", event.notifications().size());
-            return;
-        }
-        client.sendBatch(event.notifications());
+        messageDispatcher.notifyAll(event.notifications());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void handle(VerificationEmailBatchEvent event) {
+        messageDispatcher.emailAll(event.emails());
     }
 }
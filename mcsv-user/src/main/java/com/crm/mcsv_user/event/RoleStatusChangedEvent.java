@@ -0,0 +1,4 @@
+package com.crm.mcsv_user.event;
+
+public record RoleStatusChangedEvent(Long roleId, String roleName, boolean enabled, long affectedUsers) {
+}
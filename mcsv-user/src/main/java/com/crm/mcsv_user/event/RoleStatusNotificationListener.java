@@ -0,0 +1,114 @@
+package com.crm.mcsv_user.event;
+
+import com.crm.common.outbox.MessageDispatcher;
+import com.crm.common.dto.SendNotificationRequest;
+import com.crm.mcsv_user.repository.RoleRepository;
+import com.crm.mcsv_user.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notifica el cambio de estado de un rol tras el commit, recorriendo a los usuarios por bloques
+ * de ids en lugar de construir una notificación por usuario dentro de la transacción.
+ */
+@Component
+@Slf4j
+public class RoleStatusNotificationListener {
+
+    private final UserRepository userRepository;
+    private final RoleRepository roleRepository;
+    private final MessageDispatcher messageDispatcher;
+    private final int chunkSize;
+    private final Counter sentCounter;
+    private final AtomicLong pending = new AtomicLong();
+
+    public RoleStatusNotificationListener(UserRepository userRepository,
+                                          RoleRepository roleRepository,
+                                          MessageDispatcher messageDispatcher,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${role-status.notification-chunk-size:500}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.roleRepository = roleRepository;
+        this.messageDispatcher = messageDispatcher;
+        this.chunkSize = chunkSize;
+        this.sentCounter = Counter.builder("user.role.status.notifications")
+                .description("Notifications published for role status changes")
+                .register(meterRegistry);
+        Gauge.builder("user.role.status.notifications.pending", pending, AtomicLong::get)
+                .description("Users still waiting for a role status notification")
+                .register(meterRegistry);
+    }
+
+    @Async("notificationExecutor")
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void handle(RoleStatusChangedEvent event) {
+        String title   = event.enabled() ? "Cuenta reactivada" : "Cuenta desactivada";
+        String message = event.enabled()
+                ? "Tu cuenta ha sido reactivada porque el rol \"" + event.roleName() + "\" fue activado."
+                : "Tu cuenta ha sido desactivada porque el rol \"" + event.roleName() + "\" fue desactivado.";
+        String type    = event.enabled() ? "SUCCESS" : "WARNING";
+
+        long remaining = userRepository.countByRolesId(event.roleId());
+        pending.addAndGet(remaining);
+        try {
+            Long afterId = 0L;
+            long notified = 0;
+            PageRequest page = PageRequest.of(0, chunkSize);
+            List<Long> ids;
+            while (!(ids = userRepository.findIdsByRoleIdAfter(event.roleId(), afterId, page)).isEmpty()) {
+                List<SendNotificationRequest> chunk = new ArrayList<>(ids.size());
+                for (Long userId : ids) {
+                    chunk.add(SendNotificationRequest.builder()
+                            .userId(userId)
+                            .title(title)
+                            .message(message)
+                            .type(type)
+                            .build());
+                }
+                messageDispatcher.notifyAll(chunk);
+                sentCounter.increment(chunk.size());
+
+                long done = Math.min(ids.size(), remaining);
+                pending.addAndGet(-done);
+                remaining -= done;
+                notified += ids.size();
+                afterId = ids.getLast();
+                log.info("Role {} status notifications: {} sent, ~{} remaining", event.roleId(), notified, remaining);
+            }
+        } finally {
+            pending.addAndGet(-remaining);
+        }
+
+        notifyAdmins(event);
+    }
+
+    private void notifyAdmins(RoleStatusChangedEvent event) {
+        String statusLabel = event.enabled() ? "activado" : "desactivado";
+        List<SendNotificationRequest> notifications = new ArrayList<>();
+        roleRepository.findByName("ROLE_ADMIN").ifPresent(adminRole ->
+                userRepository.findAllByRolesId(adminRole.getId())
+                        .forEach(admin -> notifications.add(SendNotificationRequest.builder()
+                                .userId(admin.getId())
+                                .title("Rol " + statusLabel)
+                                .message("El rol \"" + event.roleName() + "\" ha sido " + statusLabel + ". "
+                                        + event.affectedUsers() + " usuario(s) afectado(s).")
+                                .type("INFO")
+                                .build())));
+        if (!notifications.isEmpty()) {
+            messageDispatcher.notifyAll(notifications);
+            sentCounter.increment(notifications.size());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.crm.mcsv_user.event;
+
+import com.crm.common.dto.EmailRequest;
+
+import java.util.List;
+
+public record VerificationEmailBatchEvent(List<EmailRequest> emails) {
+}
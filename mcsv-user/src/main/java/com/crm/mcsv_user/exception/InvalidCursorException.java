@@ -0,0 +1,7 @@
+package com.crm.mcsv_user.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -1,19 +1,27 @@
 package com.crm.mcsv_user.repository;
 
 import com.crm.mcsv_user.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User> {
 
     Optional<User> findByUsername(String username);
 
@@ -25,9 +33,35 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u LEFT JOIN FETCH u.roles r LEFT JOIN FETCH r.permissions WHERE u.email = :email")
     Optional<User> findByEmailWithRoles(@Param("email") String email);
 
-    boolean existsByUsername(String username);
+    // Username o email en una sola consulta, con roles y permisos (login).
+    // Sin distinguir mayúsculas: usa los índices funcionales lower(username) / lower(email)
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.roles r LEFT JOIN FETCH r.permissions " +
+           "WHERE LOWER(u.username) = LOWER(:login) OR LOWER(u.email) = LOWER(:login)")
+    List<User> findByUsernameOrEmailWithRoles(@Param("login") String login);
 
-    boolean existsByEmail(String email);
+    // Filas (datos básicos, roleId, roleName, permissionName) para los permisos efectivos
+    @Query("SELECT u.id, u.username, u.email, u.firstName, u.lastName, u.avatarUrl, u.enabled, u.phoneNumber, " +
+           "r.id, r.name, p.name FROM User u " +
+           "LEFT JOIN u.roles r LEFT JOIN r.permissions p WHERE u.id = :id")
+    List<Object[]> findAuthorityRows(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE User u SET u.lastLogin = :lastLogin WHERE u.id = :id")
+    int updateLastLogin(@Param("id") Long id, @Param("lastLogin") LocalDateTime lastLogin);
+
+    // Unicidad de un bloque de importación en una sola consulta por columna. Recibe los valores
+    // en minúsculas y los devuelve en minúsculas, igual que los índices únicos lower(...)
+    @Query("SELECT LOWER(u.username) FROM User u WHERE LOWER(u.username) IN :usernames")
+    Set<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("SELECT LOWER(u.email) FROM User u WHERE LOWER(u.email) IN :emails")
+    Set<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    @Query("SELECT COUNT(u) > 0 FROM User u WHERE LOWER(u.username) = LOWER(:username)")
+    boolean existsByUsername(@Param("username") String username);
+
+    @Query("SELECT COUNT(u) > 0 FROM User u WHERE LOWER(u.email) = LOWER(:email)")
+    boolean existsByEmail(@Param("email") String email);
 
     @Query("SELECT u FROM User u WHERE LOWER(u.firstName) LIKE LOWER(CONCAT('%', :search, '%')) " +
            "OR LOWER(u.lastName) LIKE LOWER(CONCAT('%', :search, '%')) " +
@@ -53,11 +87,11 @@ public interface UserRepository extends JpaRepository<User, Long> {
                            @Param("status") Boolean status, @Param("roleId") Long roleId,
                            Pageable pageable);
 
-    @Query(value = "SELECT u FROM User u ORDER BY (SELECT MIN(r.name) FROM u.roles r) ASC",
+    @Query(value = "SELECT u FROM User u ORDER BY u.primaryRole ASC, u.id ASC",
            countQuery = "SELECT COUNT(u) FROM User u")
     Page<User> findAllSortedByRoleAsc(Pageable pageable);
 
-    @Query(value = "SELECT u FROM User u ORDER BY (SELECT MIN(r.name) FROM u.roles r) DESC",
+    @Query(value = "SELECT u FROM User u ORDER BY u.primaryRole DESC, u.id DESC",
            countQuery = "SELECT COUNT(u) FROM User u")
     Page<User> findAllSortedByRoleDesc(Pageable pageable);
 
@@ -65,7 +99,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
                    "OR LOWER(u.lastName) LIKE LOWER(CONCAT('%', :search, '%')) " +
                    "OR LOWER(u.username) LIKE LOWER(CONCAT('%', :search, '%')) " +
                    "OR LOWER(u.email) LIKE LOWER(CONCAT('%', :search, '%')) " +
-                   "ORDER BY (SELECT MIN(r.name) FROM u.roles r) ASC",
+                   "ORDER BY u.primaryRole ASC, u.id ASC",
            countQuery = "SELECT COUNT(u) FROM User u WHERE LOWER(u.firstName) LIKE LOWER(CONCAT('%', :search, '%')) " +
                         "OR LOWER(u.lastName) LIKE LOWER(CONCAT('%', :search, '%')) " +
                         "OR LOWER(u.username) LIKE LOWER(CONCAT('%', :search, '%')) " +
@@ -76,7 +110,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
                    "OR LOWER(u.lastName) LIKE LOWER(CONCAT('%', :search, '%')) " +
                    "OR LOWER(u.username) LIKE LOWER(CONCAT('%', :search, '%')) " +
                    "OR LOWER(u.email) LIKE LOWER(CONCAT('%', :search, '%')) " +
-                   "ORDER BY (SELECT MIN(r.name) FROM u.roles r) DESC",
+                   "ORDER BY u.primaryRole DESC, u.id DESC",
            countQuery = "SELECT COUNT(u) FROM User u WHERE LOWER(u.firstName) LIKE LOWER(CONCAT('%', :search, '%')) " +
                         "OR LOWER(u.lastName) LIKE LOWER(CONCAT('%', :search, '%')) " +
                         "OR LOWER(u.username) LIKE LOWER(CONCAT('%', :search, '%')) " +
@@ -95,7 +129,37 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     List<User> findAllByRolesId(Long roleId);
 
+    // Actualización masiva del estado de los usuarios de un rol (sin cargar entidades)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE User u SET u.enabled = :enabled, u.updatedAt = :now " +
+           "WHERE u.enabled <> :enabled AND u.id IN (SELECT m.id FROM User m JOIN m.roles r WHERE r.id = :roleId)")
+    int updateEnabledByRoleId(@Param("roleId") Long roleId, @Param("enabled") Boolean enabled,
+                              @Param("now") LocalDateTime now);
+
+    long countByRolesId(Long roleId);
+
+    // Recalcula el rol principal desnormalizado de los miembros de un rol (p. ej. tras renombrarlo)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE users u SET primary_role = COALESCE((SELECT MIN(r.name) FROM user_roles ur " +
+                   "JOIN roles r ON r.id = ur.role_id WHERE ur.user_id = u.id), '') " +
+                   "WHERE u.id IN (SELECT ur.user_id FROM user_roles ur WHERE ur.role_id = :roleId)",
+           nativeQuery = true)
+    int refreshPrimaryRoleByRoleId(@Param("roleId") Long roleId);
+
+    // Ids de los usuarios de un rol por bloques (keyset sobre el id)
+    @Query("SELECT u.id FROM User u JOIN u.roles r WHERE r.id = :roleId AND u.id > :afterId ORDER BY u.id")
+    List<Long> findIdsByRoleIdAfter(@Param("roleId") Long roleId, @Param("afterId") Long afterId, Pageable pageable);
+
     List<User> findByRolesNameContainingIgnoreCase(String name);
 
     long countByEnabled(boolean enabled);
+
+    // Exportación: filas planas (el rol como en la ordenación por rol) leídas con cursor, sin entidades
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT u.id, u.username, u.firstName, u.lastName, u.email, u.phoneNumber, " +
+           "(SELECT MIN(r.name) FROM u.roles r), u.enabled, u.createdAt FROM User u ORDER BY u.id")
+    Stream<Object[]> streamExportRows();
 }
@@ -0,0 +1,67 @@
+package com.crm.mcsv_user.repository;
+
+import com.crm.mcsv_user.entity.Role;
+import com.crm.mcsv_user.entity.User;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserSpecification {
+
+    private UserSpecification() {}
+
+    // Mismos filtros que filterUsers; el rol va en un EXISTS para no duplicar filas ni necesitar DISTINCT
+    public static Specification<User> withFilters(String name, String email, Boolean status, Long roleId) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            if (name != null && !name.isBlank()) {
+                String pattern = "%" + name.trim().toLowerCase() + "%";
+                predicates.add(cb.or(
+                        cb.like(cb.lower(root.get("firstName")), pattern),
+                        cb.like(cb.lower(root.get("lastName")), pattern),
+                        cb.like(cb.lower(root.get("username")), pattern)
+                ));
+            }
+
+            if (email != null && !email.isBlank()) {
+                predicates.add(cb.like(cb.lower(root.get("email")), "%" + email.trim().toLowerCase() + "%"));
+            }
+
+            if (status != null) {
+                predicates.add(cb.equal(root.get("enabled"), status));
+            }
+
+            if (roleId != null) {
+                Subquery<Long> member = query.subquery(Long.class);
+                Root<User> sub = member.from(User.class);
+                Join<User, Role> role = sub.join("roles");
+                member.select(sub.get("id"))
+                        .where(cb.equal(sub.get("id"), root.get("id")), cb.equal(role.get("id"), roleId));
+                predicates.add(cb.exists(member));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Keyset: filas posteriores a (value, id) en el orden (field, id). Con el índice compuesto
+     * (field, id) la página N cuesta lo mismo que la primera.
+     */
+    public static <T extends Comparable<? super T>> Specification<User> after(String field, T value, Long id, boolean asc) {
+        return (root, query, cb) -> {
+            Path<T> path = root.get(field);
+            Path<Long> idPath = root.get("id");
+            Predicate beyond = asc ? cb.greaterThan(path, value) : cb.lessThan(path, value);
+            Predicate tieBreak = cb.and(cb.equal(path, value), asc ? cb.greaterThan(idPath, id) : cb.lessThan(idPath, id));
+            return cb.or(beyond, tieBreak);
+        };
+    }
+}
@@ -1,14 +1,19 @@
 package com.crm.mcsv_user.service;
 
 import com.crm.common.dto.BulkImportResult;
+import com.crm.common.dto.CursorPageResponse;
+import com.crm.mcsv_user.dto.AuthenticateResponse;
 import com.crm.mcsv_user.dto.CreateUserRequest;
 import com.crm.mcsv_user.dto.UpdateUserRequest;
+import com.crm.mcsv_user.dto.UserAuthoritiesDTO;
 import com.crm.mcsv_user.dto.UserDTO;
 import com.crm.mcsv_user.dto.UserResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -18,6 +23,10 @@ public interface UserService {
 
     Page<UserResponse> filterUsers(String name, String email, Boolean status, Long roleId, Pageable pageable, String sortBy, String sortDir);
 
+    CursorPageResponse<UserResponse> scrollUsers(String name, String email, Boolean status, Long roleId,
+                                                 String cursor, int size, String sortBy, String sortDir,
+                                                 boolean includeCount);
+
     List<UserResponse> getAllUsersForSelect();
 
     List<UserResponse> getAvailableUsersForEmployee(String search, List<Long> excludeIds);
@@ -26,10 +35,14 @@ public interface UserService {
 
     List<UserDTO> getUsersByIds(List<Long> ids);
 
+    UserAuthoritiesDTO getUserAuthorities(Long id);
+
     UserDTO getUserByUsername(String username);
 
     UserDTO getUserByEmail(String email);
 
+    UserDTO getUserByUsernameOrEmail(String usernameOrEmail);
+
     UserResponse createUser(CreateUserRequest request);
 
     UserResponse updateUser(Long id, UpdateUserRequest request);
@@ -46,6 +59,8 @@ public interface UserService {
 
     boolean validateCredentials(String usernameOrEmail, String password);
 
+    AuthenticateResponse authenticate(String usernameOrEmail, String password);
+
     void updatePassword(Long userId, String newPassword);
 
     void verifyEmail(Long userId);
@@ -57,6 +72,6 @@ public interface UserService {
     boolean validateAndConsumeCode(Long userId, String code);
 
     Map<String, Long> getUserStats();
-    byte[] exportCsv();
+    void exportCsv(OutputStream out) throws IOException;
     BulkImportResult importUsersFromCsv(MultipartFile file);
 }
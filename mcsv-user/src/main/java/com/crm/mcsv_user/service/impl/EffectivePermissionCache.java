@@ -0,0 +1,148 @@
+package com.crm.mcsv_user.service.impl;
+
+import com.crm.common.exception.ResourceNotFoundException;
+import com.crm.mcsv_user.dto.UserAuthoritiesDTO;
+import com.crm.mcsv_user.event.AuthoritiesChangedEvent;
+import com.crm.mcsv_user.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permisos efectivos precalculados por usuario. Se cargan con una proyección (sin el grafo de
+ * entidades) y se invalidan cuando cambian los roles/permisos de un rol o de un usuario.
+ * <p>
+ * La invalidación solo llega a la réplica que hizo el cambio; en el resto una entrada puede quedar
+ * desactualizada hasta {@code permission-cache.ttl}, por eso el TTL es de segundos: absorbe las
+ * ráfagas de login/validación sin dejar permisos revocados vigentes más de ese tiempo.
+ */
+@Component
+@Slf4j
+public class EffectivePermissionCache {
+
+    private record Entry(UserAuthoritiesDTO authorities, Set<Long> roleIds, long expiresAt) {
+    }
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // Se incrementa en cada invalidación; una carga iniciada antes no se guarda
+    private final AtomicLong generation = new AtomicLong();
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final Counter hits;
+    private final Counter misses;
+
+    public EffectivePermissionCache(UserRepository userRepository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${permission-cache.ttl:5s}") Duration ttl,
+                                    @Value("${permission-cache.max-size:10000}") int maxSize) {
+        this.userRepository = userRepository;
+        this.ttlMillis = ttl.toMillis();
+        this.maxSize = maxSize;
+        this.hits = Counter.builder("user.permission.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("user.permission.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("user.permission.cache.size", entries, Map::size).register(meterRegistry);
+    }
+
+    public UserAuthoritiesDTO get(Long userId) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.expiresAt() > now) {
+            hits.increment();
+            return entry.authorities();
+        }
+        misses.increment();
+
+        long loadGeneration = generation.get();
+        Entry loaded = load(userId, now);
+        if (generation.get() == loadGeneration) {
+            if (entries.size() >= maxSize) {
+                evictExpired(now);
+            }
+            if (entries.size() < maxSize) {
+                entries.put(userId, loaded);
+            }
+        }
+        return loaded.authorities();
+    }
+
+    // Inmediata (por si la petición siguiente llega antes del commit) y de nuevo tras el commit,
+    // para descartar lo que se haya recargado con datos aún sin confirmar.
+    @EventListener
+    public void onChange(AuthoritiesChangedEvent event) {
+        invalidate(event);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void afterCommit(AuthoritiesChangedEvent event) {
+        invalidate(event);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    private void invalidate(AuthoritiesChangedEvent event) {
+        generation.incrementAndGet();
+        if (event.userId() != null) {
+            entries.remove(event.userId());
+        }
+        if (event.roleId() != null) {
+            entries.values().removeIf(e -> e.roleIds().contains(event.roleId()));
+        }
+    }
+
+    private Entry load(Long userId, long now) {
+        List<Object[]> rows = userRepository.findAuthorityRows(userId);
+        if (rows.isEmpty()) {
+            throw new ResourceNotFoundException("User not found with id: " + userId);
+        }
+
+        Set<Long> roleIds = new HashSet<>();
+        Set<String> roles = new HashSet<>();
+        Set<String> permissions = new HashSet<>();
+        for (Object[] row : rows) {
+            if (row[8] != null) {
+                roleIds.add((Long) row[8]);
+                roles.add((String) row[9]);
+            }
+            if (row[10] != null) {
+                permissions.add((String) row[10]);
+            }
+        }
+
+        Object[] first = rows.getFirst();
+        UserAuthoritiesDTO authorities = UserAuthoritiesDTO.builder()
+                .userId((Long) first[0])
+                .username((String) first[1])
+                .email((String) first[2])
+                .firstName((String) first[3])
+                .lastName((String) first[4])
+                .avatarUrl((String) first[5])
+                .enabled((Boolean) first[6])
+                .phoneNumber((String) first[7])
+                .roles(Set.copyOf(roles))
+                .permissions(Set.copyOf(permissions))
+                .build();
+        return new Entry(authorities, Set.copyOf(roleIds), now + ttlMillis);
+    }
+
+    private void evictExpired(long now) {
+        entries.values().removeIf(e -> e.expiresAt() <= now);
+    }
+}
@@ -0,0 +1,84 @@
+package com.crm.mcsv_user.service.impl;
+
+import com.crm.common.util.WriteBehindBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actualiza la fecha de último login fuera de la petición de login. Las fechas se acumulan en
+ * memoria (una por usuario, la más reciente) y se escriben cada pocos segundos con un único
+ * UPDATE por lote; al apagar se vacía lo pendiente.
+ */
+@Component
+@Slf4j
+public class LastLoginUpdater {
+
+    // Nunca retrocede: con varias réplicas gana siempre la fecha más reciente
+    private static final String UPDATE_SQL =
+            "UPDATE users u SET last_login = v.last_login " +
+            "FROM unnest(?::bigint[], ?::timestamp[]) AS v(id, last_login) " +
+            "WHERE u.id = v.id AND (u.last_login IS NULL OR u.last_login < v.last_login)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WriteBehindBuffer<Long, LocalDateTime> buffer;
+
+    public LastLoginUpdater(JdbcTemplate jdbcTemplate,
+                            ObjectProvider<MeterRegistry> meterRegistryProvider,
+                            @Value("${last-login.buffer.capacity:10000}") int capacity,
+                            @Value("${last-login.buffer.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.buffer = new WriteBehindBuffer<>("last-login", capacity, batchSize,
+                (a, b) -> a.isAfter(b) ? a : b,
+                this::write,
+                meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public void updateLastLogin(Long userId, LocalDateTime lastLogin) {
+        try {
+            buffer.put(userId, lastLogin);
+        } catch (Exception e) {
+            log.warn("Failed to update last login for user id {}: {}", userId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${last-login.buffer.flush-interval-ms:5000}")
+    public void flush() {
+        int written = buffer.flush();
+        if (written > 0) {
+            log.debug("Flushed last login of {} user(s)", written);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void write(Map<Long, LocalDateTime> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        List<Timestamp> timestamps = new ArrayList<>(batch.size());
+        batch.forEach((id, lastLogin) -> {
+            ids.add(id);
+            timestamps.add(Timestamp.valueOf(lastLogin));
+        });
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement(UPDATE_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            ps.setArray(2, connection.createArrayOf("timestamp", timestamps.toArray()));
+            return ps;
+        });
+    }
+}
@@ -0,0 +1,158 @@
+package com.crm.mcsv_user.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifica contraseñas (BCrypt) en un pool de CPU acotado, fuera de cualquier transacción.
+ * Las peticiones corren en hilos virtuales; el hashing queda limitado a un hilo por núcleo
+ * y, si la cola se llena, se rechaza en lugar de encolar sin límite.
+ */
+@Component
+@Slf4j
+public class PasswordVerifier {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final Timer waitTimer;
+    private final Timer hashTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordVerifier(PasswordEncoder passwordEncoder,
+                            MeterRegistry meterRegistry,
+                            @Value("${password-hashing.pool-size:0}") int poolSize,
+                            @Value("${password-hashing.queue-capacity:256}") int queueCapacity,
+                            @Value("${password-hashing.timeout:5s}") Duration timeout) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeout = timeout;
+
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pwd-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("user.password.hash.queue", executor, e -> e.getQueue().size())
+                .description("Password verifications waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("user.password.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("user.password.hash.wait")
+                .description("Time a verification spends queued before hashing starts")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.hashTimer = Timer.builder("user.password.hash.duration")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("user.password.hash.rejected")
+                .register(meterRegistry);
+
+        log.info("Password hashing pool: {} threads, queue capacity {}", threads, queueCapacity);
+    }
+
+    /**
+     * Compara la contraseña en el pool de hashing y espera el resultado.
+     *
+     * @throws RejectedExecutionException si el pool está saturado o no responde a tiempo
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return false;
+        }
+
+        long enqueuedAt = System.nanoTime();
+        Future<Boolean> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return passwordEncoder.matches(rawPassword, encodedPassword);
+                } finally {
+                    hashTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Password verification capacity exceeded");
+        }
+
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Password verification timed out");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Password verification interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password verification failed", e.getCause());
+        }
+    }
+
+    /**
+     * Codifica varias contraseñas en paralelo en el pool de hashing (importaciones masivas).
+     * Se envían de tanda en tanda (una por hilo) para no llenar la cola que usan los logins;
+     * lo que no cabe se codifica en el hilo llamante.
+     */
+    public List<String> encodeAll(List<String> rawPasswords) {
+        int parallelism = executor.getCorePoolSize();
+        List<String> encoded = new ArrayList<>(rawPasswords.size());
+        for (int from = 0; from < rawPasswords.size(); from += parallelism) {
+            List<String> slice = rawPasswords.subList(from, Math.min(from + parallelism, rawPasswords.size()));
+            List<Future<String>> futures = new ArrayList<>(slice.size());
+            for (String raw : slice) {
+                try {
+                    futures.add(executor.submit(() -> passwordEncoder.encode(raw)));
+                } catch (RejectedExecutionException e) {
+                    futures.add(CompletableFuture.completedFuture(passwordEncoder.encode(raw)));
+                }
+            }
+            try {
+                for (Future<String> future : futures) {
+                    encoded.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Password encoding interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Password encoding failed", e.getCause());
+            }
+        }
+        return encoded;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
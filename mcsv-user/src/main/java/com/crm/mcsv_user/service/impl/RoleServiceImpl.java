@@ -9,7 +9,9 @@ import com.crm.mcsv_user.dto.UpdateRoleRequest;
 import com.crm.mcsv_user.entity.Permission;
 import com.crm.mcsv_user.entity.Role;
 import com.crm.mcsv_user.entity.User;
+import com.crm.mcsv_user.event.AuthoritiesChangedEvent;
 import com.crm.mcsv_user.event.NotificationBatchEvent;
+import com.crm.mcsv_user.event.RoleStatusChangedEvent;
 import com.crm.common.exception.DuplicateResourceException;
 import com.crm.common.exception.ResourceNotFoundException;
 import com.crm.mcsv_user.mapper.UserMapper;
@@ -18,6 +20,8 @@ import com.crm.mcsv_user.repository.RoleRepository;
 import com.crm.mcsv_user.repository.UserRepository;
 import com.crm.mcsv_user.service.RoleService;
 import com.crm.common.util.CsvUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
@@ -28,6 +32,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -45,6 +50,7 @@ public class RoleServiceImpl implements RoleService {
     private final PermissionRepository permissionRepository;
     private final UserMapper userMapper;
     private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
 
     @Override
     @Transactional(readOnly = true)
@@ -125,11 +131,13 @@ public class RoleServiceImpl implements RoleService {
         Role role = roleRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Role not found with id: " + id));
 
+        boolean renamed = false;
         if (request.getName() != null && !request.getName().equals(role.getName())) {
             if (roleRepository.existsByName(request.getName())) {
                 throw new DuplicateResourceException("Role already exists with name: " + request.getName());
             }
             role.setName(request.getName());
+            renamed = true;
         }
 
         if (request.getDescription() != null) {
@@ -138,6 +146,10 @@ public class RoleServiceImpl implements RoleService {
 
         Role updatedRole = roleRepository.save(role);
         log.info("Role updated successfully with id: {}", updatedRole.getId());
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forRole(updatedRole.getId()));
+        if (renamed) {
+            userRepository.refreshPrimaryRoleByRoleId(updatedRole.getId());
+        }
 
         List<User> users = userRepository.findAllByRolesId(updatedRole.getId());
         List<SendNotificationRequest> notifications = users.stream()
@@ -163,6 +175,7 @@ public class RoleServiceImpl implements RoleService {
         }
 
         roleRepository.deleteById(id);
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forRole(id));
         log.info("Role deleted successfully with id: {}", id);
     }
 
@@ -174,49 +187,28 @@ public class RoleServiceImpl implements RoleService {
         return Map.of("total", total, "active", active);
     }
 
+    // Un único UPDATE masivo; las notificaciones a los usuarios se envían tras el commit por bloques
+    // (RoleStatusNotificationListener), así la transacción no crece con el número de miembros.
     @Override
     @Transactional
     public void updateStatus(Long id, Boolean enabled) {
         log.info("Updating status for role id: {} to {}", id, enabled);
+        Timer.Sample sample = Timer.start(meterRegistry);
 
         Role role = roleRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Role not found with id: " + id));
 
         role.setEnabled(enabled);
         roleRepository.save(role);
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forRole(id));
 
-        List<User> users = userRepository.findAllByRolesId(id);
-        users.forEach(u -> u.setEnabled(enabled));
-        userRepository.saveAll(users);
-
-        log.info("Role status updated to {}. Affected {} users.", enabled, users.size());
-
-        String statusLabel = Boolean.TRUE.equals(enabled) ? "activado" : "desactivado";
-        String userTitle   = Boolean.TRUE.equals(enabled) ? "Cuenta reactivada" : "Cuenta desactivada";
-        String userMessage = Boolean.TRUE.equals(enabled)
-                ? "Tu cuenta ha sido reactivada porque el rol \"" + role.getName() + "\" fue activado."
-                : "Tu cuenta ha sido desactivada porque el rol \"" + role.getName() + "\" fue desactivado.";
-        String userType = Boolean.TRUE.equals(enabled) ? "SUCCESS" : "WARNING";
-
-        List<SendNotificationRequest> notifications = new ArrayList<>();
-
-        users.forEach(u -> notifications.add(SendNotificationRequest.builder()
-                .userId(u.getId())
-                .title(userTitle)
-                .message(userMessage)
-                .type(userType)
-                .build()));
+        int affected = userRepository.updateEnabledByRoleId(id, enabled, LocalDateTime.now());
+        log.info("Role status updated to {}. Affected {} users.", enabled, affected);
 
-        roleRepository.findByName("ROLE_ADMIN").ifPresent(adminRole ->
-                userRepository.findAllByRolesId(adminRole.getId()).forEach(admin ->
-                        notifications.add(SendNotificationRequest.builder()
-                                .userId(admin.getId())
-                                .title("Rol " + statusLabel)
-                                .message("El rol \"" + role.getName() + "\" ha sido " + statusLabel + ". " + users.size() + " usuario(s) afectado(s).")
-                                .type("INFO")
-                                .build())));
+        meterRegistry.summary("user.role.status.affected").record(affected);
+        sample.stop(meterRegistry.timer("user.role.status.update"));
 
-        publishNotifications(notifications);
+        eventPublisher.publishEvent(new RoleStatusChangedEvent(id, role.getName(), Boolean.TRUE.equals(enabled), affected));
     }
 
     @Override
@@ -241,6 +233,7 @@ public class RoleServiceImpl implements RoleService {
         List<Permission> permissions = permissionRepository.findAllByIdIn(permissionIds);
         role.setPermissions(new HashSet<>(permissions));
         RoleDTO result = userMapper.roleToDTO(roleRepository.save(role));
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forRole(roleId));
         notifyPermissionChange(role, "Los permisos de tu rol \"" + role.getName() + "\" han sido reemplazados por un administrador.");
         return result;
     }
@@ -254,6 +247,7 @@ public class RoleServiceImpl implements RoleService {
         List<Permission> permissions = permissionRepository.findAllByIdIn(permissionIds);
         role.getPermissions().addAll(permissions);
         RoleDTO result = userMapper.roleToDTO(roleRepository.save(role));
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forRole(roleId));
         notifyPermissionChange(role, "Se han agregado permisos a tu rol \"" + role.getName() + "\".");
         return result;
     }
@@ -266,6 +260,7 @@ public class RoleServiceImpl implements RoleService {
                 .orElseThrow(() -> new ResourceNotFoundException("Role not found with id: " + roleId));
         role.getPermissions().removeIf(p -> permissionIds.contains(p.getId()));
         RoleDTO result = userMapper.roleToDTO(roleRepository.save(role));
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forRole(roleId));
         notifyPermissionChange(role, "Se han eliminado permisos de tu rol \"" + role.getName() + "\".");
         return result;
     }
@@ -312,6 +307,7 @@ public class RoleServiceImpl implements RoleService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public byte[] exportCsv() {
         StringBuilder csv = new StringBuilder();
         csv.append("ID,Nombre,Descripción,Habilitado,Permisos\n");
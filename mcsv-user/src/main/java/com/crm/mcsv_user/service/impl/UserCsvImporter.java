@@ -0,0 +1,373 @@
+package com.crm.mcsv_user.service.impl;
+
+import com.crm.common.dto.BulkImportResult;
+import com.crm.common.dto.EmailRequest;
+import com.crm.common.dto.SendNotificationRequest;
+import com.crm.common.util.CsvUtil;
+import com.crm.mcsv_user.event.NotificationBatchEvent;
+import com.crm.mcsv_user.event.VerificationEmailBatchEvent;
+import com.crm.mcsv_user.repository.RoleRepository;
+import com.crm.mcsv_user.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Importación masiva de usuarios desde CSV por bloques: roles precargados una vez, unicidad
+ * validada con una consulta IN por bloque, inserciones con batching JDBC y correos/notificaciones
+ * encolados en lote tras el commit de cada bloque.
+ */
+@Component
+@Slf4j
+public class UserCsvImporter {
+
+    private static final String INSERT_USER =
+            "INSERT INTO users (username, email, password, first_name, last_name, phone_number, email_verified, " +
+            "status, account_non_expired, account_non_locked, credentials_non_expired, created_at, updated_at, primary_role) " +
+            "VALUES (?, ?, ?, ?, ?, ?, false, true, true, true, true, ?, ?, ?)";
+    private static final String INSERT_USER_ROLE = "INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)";
+    private static final String INSERT_VERIFICATION_CODE =
+            "INSERT INTO admin_email_verification_codes (code, user_id, expires_at, created_at, used) VALUES (?, ?, ?, ?, false)";
+
+    // Longitudes de las columnas de users: se validan por fila para que un valor largo no tumbe el bloque
+    private static final int MAX_USERNAME_LENGTH = 100;
+    private static final int MAX_EMAIL_LENGTH = 150;
+    private static final int MAX_NAME_LENGTH = 100;
+    private static final int MAX_PHONE_LENGTH = 20;
+
+    private static final int VERIFICATION_CODE_EXPIRY_MINUTES = 10;
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private record Row(int line, String username, String firstName, String lastName,
+                       String email, String phone, Long roleId, String roleName) {
+    }
+
+    private final UserRepository userRepository;
+    private final RoleRepository roleRepository;
+    private final PasswordVerifier passwordVerifier;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+    private final String frontendUrl;
+
+    public UserCsvImporter(UserRepository userRepository,
+                           RoleRepository roleRepository,
+                           PasswordVerifier passwordVerifier,
+                           JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${user-import.chunk-size:500}") int chunkSize,
+                           @Value("${app.frontend.url:http://localhost:5173}") String frontendUrl) {
+        this.userRepository = userRepository;
+        this.roleRepository = roleRepository;
+        this.passwordVerifier = passwordVerifier;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.frontendUrl = frontendUrl;
+    }
+
+    public BulkImportResult importCsv(MultipartFile file) {
+        List<BulkImportResult.RowError> errors = new ArrayList<>();
+        int total = 0;
+        int success = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                return BulkImportResult.builder().total(0).success(0).failed(0).errors(errors).build();
+            }
+            String[] headers = CsvUtil.parseLine(headerLine);
+            Map<String, Integer> idx = CsvUtil.headerIndex(headers);
+
+            int iUsername  = idx.getOrDefault("username", -1);
+            int iFirstName = idx.getOrDefault("nombre", -1);
+            int iLastName  = idx.getOrDefault("apellido", -1);
+            int iEmail     = idx.getOrDefault("email", -1);
+            int iPhone     = idx.getOrDefault("teléfono", idx.getOrDefault("telefono", -1));
+            int iRole      = idx.getOrDefault("rol", -1);
+
+            if (iUsername < 0 || iEmail < 0) {
+                errors.add(new BulkImportResult.RowError(1, "Faltan columnas obligatorias: Username, Email"));
+                return BulkImportResult.builder().total(0).success(0).failed(1).errors(errors).build();
+            }
+
+            // Roles precargados una sola vez; un rol desconocido se asigna como ROLE_USER (como antes)
+            Map<String, Long> roleIds = new HashMap<>();
+            roleRepository.findAll().forEach(r -> roleIds.put(r.getName(), r.getId()));
+            Long defaultRoleId = roleIds.get("ROLE_USER");
+
+            Set<String> seenUsernames = new HashSet<>();
+            Set<String> seenEmails = new HashSet<>();
+            List<Row> chunk = new ArrayList<>(chunkSize);
+
+            String line;
+            int row = 1;
+            while ((line = reader.readLine()) != null) {
+                row++;
+                if (line.isBlank()) continue;
+                total++;
+                try {
+                    String[] cols = CsvUtil.parseLine(line);
+                    String username = CsvUtil.col(cols, iUsername);
+                    String email    = CsvUtil.col(cols, iEmail);
+                    String roleName = CsvUtil.col(cols, iRole);
+
+                    if (username.isEmpty() || email.isEmpty()) {
+                        errors.add(new BulkImportResult.RowError(row, "Username y Email son obligatorios"));
+                        continue;
+                    }
+                    if (!seenUsernames.add(username.toLowerCase(Locale.ROOT))) {
+                        errors.add(new BulkImportResult.RowError(row, "Username already exists: " + username));
+                        continue;
+                    }
+                    if (!seenEmails.add(email.toLowerCase(Locale.ROOT))) {
+                        errors.add(new BulkImportResult.RowError(row, "Email already exists: " + email));
+                        continue;
+                    }
+
+                    Long roleId = roleName.isEmpty() ? null : roleIds.get(roleName);
+                    if (roleId == null) {
+                        roleId = defaultRoleId;
+                        roleName = "ROLE_USER";
+                    }
+                    if (roleId == null) {
+                        errors.add(new BulkImportResult.RowError(row, "Default role ROLE_USER not found"));
+                        continue;
+                    }
+
+                    Row parsed = new Row(row, username,
+                            emptyToNull(CsvUtil.col(cols, iFirstName)),
+                            emptyToNull(CsvUtil.col(cols, iLastName)),
+                            email,
+                            emptyToNull(CsvUtil.col(cols, iPhone)),
+                            roleId, roleName);
+                    String lengthError = lengthError(parsed);
+                    if (lengthError != null) {
+                        errors.add(new BulkImportResult.RowError(row, lengthError));
+                        continue;
+                    }
+                    chunk.add(parsed);
+                } catch (Exception e) {
+                    errors.add(new BulkImportResult.RowError(row, e.getMessage()));
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    success += importChunk(chunk, errors);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                success += importChunk(chunk, errors);
+            }
+        } catch (Exception e) {
+            log.error("Error reading CSV file for users", e);
+            errors.add(new BulkImportResult.RowError(0, "Error leyendo el archivo: " + e.getMessage()));
+        }
+
+        errors.sort(Comparator.comparingInt(BulkImportResult.RowError::getRow));
+        return BulkImportResult.builder()
+                .total(total)
+                .success(success)
+                .failed(errors.size())
+                .errors(errors)
+                .build();
+    }
+
+    private int importChunk(List<Row> chunk, List<BulkImportResult.RowError> errors) {
+        List<String> usernames = chunk.stream().map(r -> r.username().toLowerCase(Locale.ROOT)).toList();
+        List<String> emails = chunk.stream().map(r -> r.email().toLowerCase(Locale.ROOT)).toList();
+        Set<String> existingUsernames = userRepository.findExistingUsernames(usernames);
+        Set<String> existingEmails = userRepository.findExistingEmails(emails);
+
+        List<Row> rows = new ArrayList<>(chunk.size());
+        for (Row r : chunk) {
+            if (existingUsernames.contains(r.username().toLowerCase(Locale.ROOT))) {
+                errors.add(new BulkImportResult.RowError(r.line(), "Username already exists: " + r.username()));
+            } else if (existingEmails.contains(r.email().toLowerCase(Locale.ROOT))) {
+                errors.add(new BulkImportResult.RowError(r.line(), "Email already exists: " + r.email()));
+            } else {
+                rows.add(r);
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        // Contraseña temporal aleatoria por usuario, codificada en paralelo en el pool de hashing
+        List<String> passwords = passwordVerifier.encodeAll(
+                rows.stream().map(r -> "Tmp!" + UUID.randomUUID()).toList());
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertChunk(rows, passwords));
+            log.info("Imported {} users (rows {}-{})", rows.size(), rows.getFirst().line(), rows.getLast().line());
+            return rows.size();
+        } catch (Exception e) {
+            log.warn("User import chunk failed (rows {}-{}), retrying row by row: {}", rows.getFirst().line(),
+                    rows.getLast().line(), NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            return importRowByRow(rows, passwords, errors);
+        }
+    }
+
+    // Un bloque fallido se reintenta fila a fila: solo se rechazan las filas que fallan por sí mismas
+    private int importRowByRow(List<Row> rows, List<String> passwords, List<BulkImportResult.RowError> errors) {
+        int imported = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            Row r = rows.get(i);
+            String password = passwords.get(i);
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertChunk(List.of(r), List.of(password)));
+                imported++;
+            } catch (Exception e) {
+                errors.add(new BulkImportResult.RowError(r.line(), NestedExceptionUtils.getMostSpecificCause(e).getMessage()));
+            }
+        }
+        return imported;
+    }
+
+    private static String lengthError(Row r) {
+        if (r.username().length() > MAX_USERNAME_LENGTH) {
+            return "Username supera los " + MAX_USERNAME_LENGTH + " caracteres";
+        }
+        if (r.email().length() > MAX_EMAIL_LENGTH) {
+            return "Email supera los " + MAX_EMAIL_LENGTH + " caracteres";
+        }
+        if (r.firstName() != null && r.firstName().length() > MAX_NAME_LENGTH) {
+            return "Nombre supera los " + MAX_NAME_LENGTH + " caracteres";
+        }
+        if (r.lastName() != null && r.lastName().length() > MAX_NAME_LENGTH) {
+            return "Apellido supera los " + MAX_NAME_LENGTH + " caracteres";
+        }
+        if (r.phone() != null && r.phone().length() > MAX_PHONE_LENGTH) {
+            return "Teléfono supera los " + MAX_PHONE_LENGTH + " caracteres";
+        }
+        return null;
+    }
+
+    private void insertChunk(List<Row> rows, List<String> passwords) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_USER, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Row r = rows.get(i);
+                        ps.setString(1, r.username());
+                        ps.setString(2, r.email());
+                        ps.setString(3, passwords.get(i));
+                        ps.setString(4, r.firstName());
+                        ps.setString(5, r.lastName());
+                        ps.setString(6, r.phone());
+                        ps.setTimestamp(7, now);
+                        ps.setTimestamp(8, now);
+                        ps.setString(9, r.roleName());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Long> ids = new ArrayList<>(keys.size());
+        for (Map<String, Object> key : keys) {
+            ids.add(((Number) key.get("id")).longValue());
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_USER_ROLE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, ids.get(i));
+                ps.setLong(2, rows.get(i).roleId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+
+        Timestamp expiresAt = Timestamp.valueOf(now.toLocalDateTime().plusMinutes(VERIFICATION_CODE_EXPIRY_MINUTES));
+        List<String> codes = rows.stream()
+                .map(r -> String.valueOf(SECURE_RANDOM.nextInt(900000) + 100000))
+                .toList();
+        jdbcTemplate.batchUpdate(INSERT_VERIFICATION_CODE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, codes.get(i));
+                ps.setLong(2, ids.get(i));
+                ps.setTimestamp(3, expiresAt);
+                ps.setTimestamp(4, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+
+        // Se envían tras el commit (listeners AFTER_COMMIT), en lote
+        List<EmailRequest> emails = new ArrayList<>(rows.size());
+        List<SendNotificationRequest> notifications = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row r = rows.get(i);
+            emails.add(verificationEmail(r.email(), r.username(), codes.get(i)));
+            notifications.add(SendNotificationRequest.builder()
+                    .userId(ids.get(i))
+                    .title("Bienvenido a CRM")
+                    .message("Hola " + r.username() + ", tu cuenta ha sido creada. Verifica tu correo para comenzar.")
+                    .type("SUCCESS")
+                    .build());
+        }
+        eventPublisher.publishEvent(new VerificationEmailBatchEvent(emails));
+        eventPublisher.publishEvent(new NotificationBatchEvent(notifications));
+    }
+
+    private EmailRequest verificationEmail(String email, String username, String code) {
+        String encodedEmail = URLEncoder.encode(email, StandardCharsets.UTF_8);
+        String link = frontendUrl + "/verify-email?email=" + encodedEmail + "&code=" + code;
+        return EmailRequest.builder()
+                .to(email)
+                .subject("Verify your email address")
+                .templateName("verification-code")
+                .variables(Map.of("code", code, "username", username, "link", link))
+                .build();
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -1,9 +1,11 @@
 package com.crm.mcsv_user.service.impl;
 
-import com.crm.common.client.EventBridgeNotificationClient;
-import com.crm.common.client.SqsEmailClient;
+import com.crm.common.outbox.MessageDispatcher;
 import com.crm.common.service.StorageService;
 import com.crm.common.dto.BulkImportResult;
+import com.crm.common.dto.CursorPageResponse;
+import com.crm.mcsv_user.dto.AuthenticateResponse;
+import com.crm.mcsv_user.dto.UserAuthoritiesDTO;
 import com.crm.mcsv_user.dto.CreateUserRequest;
 import com.crm.common.dto.SendNotificationRequest;
 import com.crm.common.dto.EmailRequest;
@@ -14,17 +16,22 @@ import com.crm.mcsv_user.dto.UserResponse;
 import com.crm.mcsv_user.entity.EmailVerificationCode;
 import com.crm.mcsv_user.entity.Role;
 import com.crm.mcsv_user.entity.User;
+import com.crm.mcsv_user.event.AuthoritiesChangedEvent;
+import com.crm.mcsv_user.exception.InvalidCursorException;
 import com.crm.common.exception.DuplicateResourceException;
 import com.crm.common.exception.ResourceNotFoundException;
 import com.crm.mcsv_user.mapper.UserMapper;
 import com.crm.mcsv_user.repository.EmailVerificationCodeRepository;
 import com.crm.mcsv_user.repository.RoleRepository;
 import com.crm.mcsv_user.repository.UserRepository;
+import com.crm.mcsv_user.repository.UserSpecification;
 import com.crm.mcsv_user.service.UserService;
+import com.crm.mcsv_user.util.UserCursor;
 import com.crm.common.util.CsvUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,20 +39,27 @@ import org.springframework.web.multipart.MultipartFile;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.format.DateTimeParseException;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -58,8 +72,12 @@ public class UserServiceImpl implements UserService {
     private final PasswordEncoder passwordEncoder;
     private final StorageService storageService;
     private final EmailVerificationCodeRepository emailVerificationCodeRepository;
-    private final SqsEmailClient sqsEmailClient;
-    private final EventBridgeNotificationClient eventBridgeNotificationClient;
+    private final MessageDispatcher messageDispatcher;
+    private final LastLoginUpdater lastLoginUpdater;
+    private final PasswordVerifier passwordVerifier;
+    private final EffectivePermissionCache effectivePermissionCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserCsvImporter userCsvImporter;
 
     @Value("${app.frontend.url:http://localhost:5173}")
     private String frontendUrl;
@@ -67,6 +85,14 @@ public class UserServiceImpl implements UserService {
     private static final int VERIFICATION_CODE_EXPIRY_MINUTES = 10;
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
 
+    // Campos con índice compuesto (campo, id) admitidos en la paginación por cursor
+    private static final Map<String, String> KEYSET_SORT_FIELDS = Map.of(
+            "createdAt", "createdAt",
+            "username", "username",
+            "email", "email",
+            "roles", "primaryRole"
+    );
+
     @Override
     @Transactional(readOnly = true)
     public Page<UserResponse> getAllUsers(String search, Pageable pageable, String sortBy, String sortDir) {
@@ -104,6 +130,63 @@ public class UserServiceImpl implements UserService {
         ).map(userMapper::toResponse);
     }
 
+    // Paginación por keyset: sin OFFSET ni COUNT salvo que se pida, y por rol mediante primary_role
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<UserResponse> scrollUsers(String name, String email, Boolean status, Long roleId,
+                                                        String cursor, int size, String sortBy, String sortDir,
+                                                        boolean includeCount) {
+        String field = sortBy == null ? "createdAt" : KEYSET_SORT_FIELDS.getOrDefault(sortBy, "createdAt");
+        boolean asc = "asc".equalsIgnoreCase(sortDir);
+        Sort.Direction direction = asc ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Sort sort = Sort.by(direction, field).and(Sort.by(direction, "id"));
+
+        Specification<User> filters = UserSpecification.withFilters(name, email, status, roleId);
+        Specification<User> spec = filters;
+        if (cursor != null && !cursor.isBlank()) {
+            UserCursor position = UserCursor.decode(cursor, field, asc);
+            spec = spec.and("createdAt".equals(field)
+                    ? UserSpecification.after(field, parseCursorDate(position.value()), position.id(), asc)
+                    : UserSpecification.after(field, position.value(), position.id(), asc));
+        }
+
+        // Se pide una fila de más para saber si hay siguiente página sin contar
+        List<User> rows = userRepository.findBy(spec, q -> q.sortBy(sort).limit(size + 1).all());
+        boolean hasNext = rows.size() > size;
+        List<User> page = hasNext ? rows.subList(0, size) : rows;
+
+        String nextCursor = null;
+        if (hasNext) {
+            User last = page.getLast();
+            nextCursor = new UserCursor(field, asc, last.getId(), keysetValue(last, field)).encode();
+        }
+
+        return CursorPageResponse.<UserResponse>builder()
+                .content(page.stream().map(userMapper::toResponse).toList())
+                .size(page.size())
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .totalElements(includeCount ? userRepository.count(filters) : null)
+                .build();
+    }
+
+    private static String keysetValue(User user, String field) {
+        return switch (field) {
+            case "username" -> user.getUsername();
+            case "email" -> user.getEmail();
+            case "primaryRole" -> user.getPrimaryRole() == null ? "" : user.getPrimaryRole();
+            default -> user.getCreatedAt().toString();
+        };
+    }
+
+    private static LocalDateTime parseCursorDate(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<UserResponse> getAvailableUsersForEmployee(String search, List<Long> excludeIds) {
@@ -132,6 +215,12 @@ public class UserServiceImpl implements UserService {
         return userMapper.toDTO(user);
     }
 
+    // Servido desde la caché de permisos efectivos; en un fallo, una sola consulta de proyección
+    @Override
+    public UserAuthoritiesDTO getUserAuthorities(Long id) {
+        return effectivePermissionCache.get(id);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<UserDTO> getUsersByIds(List<Long> ids) {
@@ -196,7 +285,7 @@ public class UserServiceImpl implements UserService {
         log.info("User created successfully with id: {}", savedUser.getId());
 
         try {
-            eventBridgeNotificationClient.send(SendNotificationRequest.builder()
+            messageDispatcher.notify(SendNotificationRequest.builder()
                     .userId(savedUser.getId())
                     .title("Bienvenido a CRM")
                     .message("Hola " + savedUser.getUsername() + ", tu cuenta ha sido creada. Verifica tu correo para comenzar.")
@@ -218,7 +307,8 @@ public class UserServiceImpl implements UserService {
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + id));
 
         if (request.getEmail() != null && !request.getEmail().equals(user.getEmail())) {
-            if (userRepository.existsByEmail(request.getEmail())) {
+            // Si solo cambian las mayúsculas el email sigue siendo el suyo
+            if (!request.getEmail().equalsIgnoreCase(user.getEmail()) && userRepository.existsByEmail(request.getEmail())) {
                 throw new DuplicateResourceException("Email already exists: " + request.getEmail());
             }
             user.setEmail(request.getEmail());
@@ -245,6 +335,7 @@ public class UserServiceImpl implements UserService {
 
         User updatedUser = userRepository.save(user);
         log.info("User updated successfully with id: {}", updatedUser.getId());
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forUser(updatedUser.getId()));
 
         return userMapper.toResponse(updatedUser);
     }
@@ -259,19 +350,20 @@ public class UserServiceImpl implements UserService {
         }
 
         userRepository.deleteById(id);
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forUser(id));
         log.info("User deleted successfully with id: {}", id);
     }
 
     @Override
-    @Transactional
+    @Transactional(readOnly = true)
     public void updateLastLogin(Long userId) {
         log.info("Updating last login for user id: {}", userId);
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
-
-        user.setLastLogin(LocalDateTime.now());
-        userRepository.save(user);
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User not found with id: " + userId);
+        }
+        // Se agrupa con el resto de últimos logins en lugar de un UPDATE por petición
+        lastLoginUpdater.updateLastLogin(userId, LocalDateTime.now());
     }
 
     @Override
@@ -284,6 +376,7 @@ public class UserServiceImpl implements UserService {
 
         user.setAvatarUrl(avatarUrl);
         userRepository.save(user);
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forUser(userId));
     }
 
     @Override
@@ -298,38 +391,83 @@ public class UserServiceImpl implements UserService {
         return userRepository.existsByEmail(email);
     }
 
+    // Sin transacción: la consulta usa su propia transacción corta y el BCrypt corre en el pool
+    // de hashing, así no se retiene una conexión del pool de BD mientras se verifica la contraseña.
     @Override
-    @Transactional
     public boolean validateCredentials(String usernameOrEmail, String password) {
         log.info("Validating credentials for: {}", usernameOrEmail);
 
-        // Buscar al usuario por username o email
-        User user = userRepository.findByUsername(usernameOrEmail)
-                .orElse(userRepository.findByEmail(usernameOrEmail).orElse(null));
-
+        User user = verifyCredentials(usernameOrEmail, password);
         if (user == null) {
-            log.warn("User not found for validation: {}", usernameOrEmail);
             return false;
         }
 
-        // Verificar si la cuenta está activa
+        log.info("Credentials validated successfully for user: {}", user.getUsername());
+        lastLoginUpdater.updateLastLogin(user.getId(), LocalDateTime.now());
+        return true;
+    }
+
+    @Override
+    public AuthenticateResponse authenticate(String usernameOrEmail, String password) {
+        log.info("Authenticating: {}", usernameOrEmail);
+
+        User user = verifyCredentials(usernameOrEmail, password);
+        if (user == null) {
+            return AuthenticateResponse.builder().authenticated(false).build();
+        }
+
+        lastLoginUpdater.updateLastLogin(user.getId(), LocalDateTime.now());
+        return AuthenticateResponse.builder()
+                .authenticated(true)
+                .user(userMapper.toDTO(user))
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UserDTO getUserByUsernameOrEmail(String usernameOrEmail) {
+        log.info("Fetching user by username or email: {}", usernameOrEmail);
+        User user = findByLogin(usernameOrEmail);
+        if (user == null) {
+            throw new ResourceNotFoundException("User not found with username or email: " + usernameOrEmail);
+        }
+        return userMapper.toDTO(user);
+    }
+
+    // Una sola consulta con roles y permisos. Con los índices únicos lower(username) / lower(email)
+    // solo puede haber dos coincidencias (el username de uno es el email de otro): prevalece el username.
+    private User findByLogin(String usernameOrEmail) {
+        if (usernameOrEmail == null || usernameOrEmail.isBlank()) {
+            return null;
+        }
+        List<User> candidates = userRepository.findByUsernameOrEmailWithRoles(usernameOrEmail);
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.getFirst();
+        }
+        return candidates.stream()
+                .filter(u -> usernameOrEmail.equalsIgnoreCase(u.getUsername()))
+                .findFirst()
+                .orElse(candidates.getFirst());
+    }
+
+    private User verifyCredentials(String usernameOrEmail, String password) {
+        User user = findByLogin(usernameOrEmail);
+
+        if (user == null) {
+            log.warn("User not found for authentication: {}", usernameOrEmail);
+            return null;
+        }
+
         if (!user.getEnabled() || !user.getAccountNonLocked()) {
             log.warn("Inactive or locked account for user: {}", usernameOrEmail);
-            return false;
+            return null;
         }
 
-        // Validar la contraseña
-        boolean isValid = passwordEncoder.matches(password, user.getPassword());
-
-        if (isValid) {
-            log.info("Credentials validated successfully for user: {}", user.getUsername());
-            // Actualizar la última fecha de login
-            updateLastLogin(user.getId());
-        } else {
+        if (!passwordVerifier.matches(password, user.getPassword())) {
             log.warn("Invalid password for user: {}", user.getUsername());
+            return null;
         }
-
-        return isValid;
+        return user;
     }
 
     @Override
@@ -399,6 +537,7 @@ public class UserServiceImpl implements UserService {
         // Save URL in user
         user.setAvatarUrl(avatarUrl);
         userRepository.save(user);
+        eventPublisher.publishEvent(AuthoritiesChangedEvent.forUser(userId));
 
         log.info("Avatar uploaded successfully for user id: {}", userId);
         return Map.of("avatarUrl", avatarUrl);
@@ -437,7 +576,7 @@ public class UserServiceImpl implements UserService {
                     .templateName("verification-code")
                     .variables(Map.of("code", code, "username", username, "link", link))
                     .build();
-            sqsEmailClient.sendEmail(emailRequest);
+            messageDispatcher.email(emailRequest);
             log.info("Verification email sent to: {}", email);
         } catch (Exception e) {
             log.error("Failed to send verification email to: {}", email, e);
@@ -453,110 +592,41 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
-    public byte[] exportCsv() {
-        StringBuilder csv = new StringBuilder();
-        csv.append("ID,Username,Nombre,Apellido,Email,Teléfono,Rol,Habilitado,Fecha Creación\n");
-        userRepository.findAll().forEach(u -> {
-            String roleName = u.getRoles().stream()
-                    .findFirst()
-                    .map(Role::getName)
-                    .orElse("");
-            csv.append(u.getId()).append(",")
-               .append(CsvUtil.escape(u.getUsername())).append(",")
-               .append(CsvUtil.escape(u.getFirstName())).append(",")
-               .append(CsvUtil.escape(u.getLastName())).append(",")
-               .append(CsvUtil.escape(u.getEmail())).append(",")
-               .append(CsvUtil.escape(u.getPhoneNumber())).append(",")
-               .append(CsvUtil.escape(roleName)).append(",")
-               .append(u.getEnabled()).append(",")
-               .append(CsvUtil.formatDate(u.getCreatedAt())).append("\n");
-        });
-        return csv.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    @Transactional(readOnly = true)
+    public void exportCsv(OutputStream out) throws IOException {
+        // Escritura directa a la respuesta: memoria constante sin importar el número de filas
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write("ID,Username,Nombre,Apellido,Email,Teléfono,Rol,Habilitado,Fecha Creación\n");
+        try (Stream<Object[]> rows = userRepository.streamExportRows()) {
+            Iterator<Object[]> it = rows.iterator();
+            while (it.hasNext()) {
+                Object[] r = it.next();
+                writer.write(String.valueOf(r[0]));
+                writer.write(',');
+                writer.write(CsvUtil.escape((String) r[1]));
+                writer.write(',');
+                writer.write(CsvUtil.escape((String) r[2]));
+                writer.write(',');
+                writer.write(CsvUtil.escape((String) r[3]));
+                writer.write(',');
+                writer.write(CsvUtil.escape((String) r[4]));
+                writer.write(',');
+                writer.write(CsvUtil.escape((String) r[5]));
+                writer.write(',');
+                writer.write(CsvUtil.escape(r[6] != null ? (String) r[6] : ""));
+                writer.write(',');
+                writer.write(String.valueOf(r[7]));
+                writer.write(',');
+                writer.write(CsvUtil.formatDate((LocalDateTime) r[8]));
+                writer.write('\n');
+            }
+        }
+        writer.flush();
     }
 
     @Override
     public BulkImportResult importUsersFromCsv(MultipartFile file) {
-        List<BulkImportResult.RowError> errors = new ArrayList<>();
-        int total = 0;
-        int success = 0;
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            String headerLine = reader.readLine();
-            if (headerLine == null) {
-                return BulkImportResult.builder().total(0).success(0).failed(0).errors(errors).build();
-            }
-            String[] headers = CsvUtil.parseLine(headerLine);
-            Map<String, Integer> idx = CsvUtil.headerIndex(headers);
-
-            int iUsername  = idx.getOrDefault("username", -1);
-            int iFirstName = idx.getOrDefault("nombre", -1);
-            int iLastName  = idx.getOrDefault("apellido", -1);
-            int iEmail     = idx.getOrDefault("email", -1);
-            int iPhone     = idx.getOrDefault("teléfono", idx.getOrDefault("telefono", -1));
-            int iRole      = idx.getOrDefault("rol", -1);
-
-            if (iUsername < 0 || iEmail < 0) {
-                errors.add(new BulkImportResult.RowError(1, "Faltan columnas obligatorias: Username, Email"));
-                return BulkImportResult.builder().total(0).success(0).failed(1).errors(errors).build();
-            }
-
-            String line;
-            int row = 1;
-            while ((line = reader.readLine()) != null) {
-                row++;
-                if (line.isBlank()) continue;
-                total++;
-                try {
-                    String[] cols = CsvUtil.parseLine(line);
-                    String username  = CsvUtil.col(cols, iUsername);
-                    String firstName = CsvUtil.col(cols, iFirstName);
-                    String lastName  = CsvUtil.col(cols, iLastName);
-                    String email     = CsvUtil.col(cols, iEmail);
-                    String phone     = CsvUtil.col(cols, iPhone);
-                    String roleName  = CsvUtil.col(cols, iRole);
-
-                    Long roleId = (!roleName.isEmpty())
-                            ? roleRepository.findByName(roleName).map(Role::getId).orElse(null)
-                            : null;
-
-                    CreateUserRequest request = CreateUserRequest.builder()
-                            .username(username)
-                            .firstName(firstName.isEmpty() ? null : firstName)
-                            .lastName(lastName.isEmpty() ? null : lastName)
-                            .email(email)
-                            .phoneNumber(phone.isEmpty() ? null : phone)
-                            .roleId(roleId)
-                            .build();
-
-                    UserResponse created = createUserInternal(request);
-                    sendVerificationCodeInternal(created.getId(), created.getEmail(), created.getUsername());
-                    success++;
-                    try {
-                        eventBridgeNotificationClient.send(SendNotificationRequest.builder()
-                                .userId(created.getId())
-                                .title("Bienvenido a CRM")
-                                .message("Hola " + created.getUsername() + ", tu cuenta ha sido creada. Verifica tu correo para comenzar.")
-                                .type("SUCCESS")
-                                .build());
-                    } catch (Exception e) {
-                        log.warn("Failed to send welcome notification to userId: {}", created.getId(), e);
-                    }
-                } catch (Exception e) {
-                    errors.add(new BulkImportResult.RowError(row, e.getMessage()));
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error reading CSV file for users", e);
-            errors.add(new BulkImportResult.RowError(0, "Error leyendo el archivo: " + e.getMessage()));
-        }
-
-        return BulkImportResult.builder()
-                .total(total)
-                .success(success)
-                .failed(errors.size())
-                .errors(errors)
-                .build();
+        return userCsvImporter.importCsv(file);
     }
 
     @Override
@@ -0,0 +1,60 @@
+package com.crm.mcsv_user.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Crea los índices únicos funcionales que usa el login (lower(username) / lower(email)), de modo
+ * que un login no pueda coincidir con dos usuarios que solo difieren en mayúsculas.
+ * El esquema se gestiona con ddl-auto, que no soporta índices sobre expresiones.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+@Slf4j
+public class LoginIndexInitializer implements CommandLineRunner {
+
+    private record LoginIndex(String name, String column, String legacyName) {
+    }
+
+    private static final List<LoginIndex> INDEXES = List.of(
+            new LoginIndex("uk_users_username_lower", "username", "idx_users_username_lower"),
+            new LoginIndex("uk_users_email_lower", "email", "idx_users_email_lower")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(String... args) {
+        for (LoginIndex index : INDEXES) {
+            try {
+                jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + index.name()
+                        + " ON users (lower(" + index.column() + "))");
+                // El índice no único anterior queda cubierto por el único
+                jdbcTemplate.execute("DROP INDEX IF EXISTS " + index.legacyName());
+            } catch (Exception e) {
+                // Normalmente hay valores repetidos sin distinguir mayúsculas: se mantiene el índice
+                // no único para las búsquedas y el login resuelve la ambigüedad por username
+                log.error("Could not create unique login index {} (duplicate {} values ignoring case?): {}",
+                        index.name(), index.column(), e.getMessage());
+                createLegacyIndex(index);
+            }
+        }
+    }
+
+    private void createLegacyIndex(LoginIndex index) {
+        try {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + index.legacyName()
+                    + " ON users (lower(" + index.column() + "))");
+        } catch (Exception e) {
+            log.warn("Could not create login index {}: {}", index.legacyName(), e.getMessage());
+        }
+    }
+}
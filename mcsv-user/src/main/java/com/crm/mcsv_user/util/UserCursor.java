@@ -0,0 +1,40 @@
+package com.crm.mcsv_user.util;
+
+import com.crm.mcsv_user.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco de la paginación por keyset: campo de orden, dirección, id y valor de la última
+ * fila devuelta, codificados en base64url. Solo es válido con el mismo orden con el que se emitió.
+ */
+public record UserCursor(String sortBy, boolean asc, long id, String value) {
+
+    private static final String VERSION = "v1";
+
+    public String encode() {
+        String raw = String.join("|", VERSION, sortBy, asc ? "asc" : "desc", Long.toString(id), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static UserCursor decode(String token, String sortBy, boolean asc) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 5);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+        if (parts.length != 5 || !VERSION.equals(parts[0])) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+        if (!parts[1].equals(sortBy) || !parts[2].equals(asc ? "asc" : "desc")) {
+            throw new InvalidCursorException("Cursor was issued for a different sort order");
+        }
+        try {
+            return new UserCursor(parts[1], asc, Long.parseLong(parts[3]), parts[4]);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.crm.mcsv_user.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Rellena users.primary_role en filas anteriores a la columna y crea los índices compuestos
+ * (columna de orden, id) que usa la paginación por cursor del listado de usuarios.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@RequiredArgsConstructor
+@Slf4j
+public class UserListingIndexInitializer implements CommandLineRunner {
+
+    private static final String BACKFILL_PRIMARY_ROLE =
+            "UPDATE users u SET primary_role = COALESCE((SELECT MIN(r.name) FROM user_roles ur " +
+            "JOIN roles r ON r.id = ur.role_id WHERE ur.user_id = u.id), '') WHERE u.primary_role IS NULL";
+
+    private static final List<String> INDEXES = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_users_created_at_id ON users (created_at, id)",
+            "CREATE INDEX IF NOT EXISTS idx_users_username_id ON users (username, id)",
+            "CREATE INDEX IF NOT EXISTS idx_users_email_id ON users (email, id)",
+            "CREATE INDEX IF NOT EXISTS idx_users_primary_role_id ON users (primary_role, id)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(String... args) {
+        try {
+            int updated = jdbcTemplate.update(BACKFILL_PRIMARY_ROLE);
+            if (updated > 0) {
+                log.info("Backfilled primary_role for {} users", updated);
+            }
+        } catch (Exception e) {
+            log.warn("Could not backfill users.primary_role: {}", e.getMessage());
+        }
+
+        for (String ddl : INDEXES) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (Exception e) {
+                log.warn("Could not create user listing index ({}): {}", ddl, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.crm.mcsv_user.service.impl;
+
+import com.crm.common.dto.BulkImportResult;
+import com.crm.mcsv_user.entity.Role;
+import com.crm.mcsv_user.repository.RoleRepository;
+import com.crm.mcsv_user.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UserCsvImporter Tests")
+class UserCsvImporterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    @Mock
+    private PasswordVerifier passwordVerifier;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private UserCsvImporter importer;
+
+    private static final int CHUNK_SIZE = 2;
+    private static final String HEADER = "Username,Nombre,Apellido,Email,Teléfono,Rol";
+
+    private final AtomicLong nextId = new AtomicLong(100);
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        importer = new UserCsvImporter(userRepository, roleRepository, passwordVerifier, jdbcTemplate,
+                transactionTemplate, eventPublisher, CHUNK_SIZE, "http://localhost:5173");
+        lenient().when(roleRepository.findAll())
+                .thenReturn(List.of(Role.builder().id(1L).name("ROLE_USER").build()));
+        lenient().when(userRepository.findExistingUsernames(anyCollection())).thenReturn(Set.of());
+        lenient().when(userRepository.findExistingEmails(anyCollection())).thenReturn(Set.of());
+        lenient().when(passwordVerifier.encodeAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        // Cada usuario insertado recibe un id generado
+        lenient().when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class),
+                any(BatchPreparedStatementSetter.class), any(KeyHolder.class))).thenAnswer(inv -> {
+            BatchPreparedStatementSetter setter = inv.getArgument(1);
+            KeyHolder keyHolder = inv.getArgument(2);
+            for (int i = 0; i < setter.getBatchSize(); i++) {
+                keyHolder.getKeyList().add(Map.of("id", nextId.getAndIncrement()));
+            }
+            return new int[setter.getBatchSize()];
+        });
+    }
+
+    private void transactionsSucceed() {
+        doAnswer(inv -> {
+            transactions.incrementAndGet();
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    private static MockMultipartFile csv(String... rows) {
+        String content = HEADER + "\n" + String.join("\n", rows) + "\n";
+        return new MockMultipartFile("file", "users.csv", "text/csv", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String row(String username, String email) {
+        return username + ",Nombre,Apellido," + email + ",,";
+    }
+
+    // ---------------------------------------------------------------
+    // chunking
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("chunking")
+    class Chunking {
+
+        @Test
+        @DisplayName("rows are checked and inserted in chunks of chunk-size")
+        void importsInChunks() {
+            transactionsSucceed();
+
+            BulkImportResult result = importer.importCsv(csv(
+                    row("u1", "u1@crm.com"), row("u2", "u2@crm.com"), row("u3", "u3@crm.com"),
+                    row("u4", "u4@crm.com"), row("u5", "u5@crm.com")));
+
+            assertThat(result.getTotal()).isEqualTo(5);
+            assertThat(result.getSuccess()).isEqualTo(5);
+            assertThat(result.getErrors()).isEmpty();
+            assertThat(transactions).hasValue(3);
+            verify(userRepository, times(3)).findExistingUsernames(anyCollection());
+            verify(userRepository, times(3)).findExistingEmails(anyCollection());
+            verify(eventPublisher, times(6)).publishEvent(any(Object.class));
+        }
+
+        @Test
+        @DisplayName("roles are loaded once for the whole file")
+        void rolesLoadedOnce() {
+            transactionsSucceed();
+
+            importer.importCsv(csv(row("u1", "u1@crm.com"), row("u2", "u2@crm.com"), row("u3", "u3@crm.com")));
+
+            verify(roleRepository, times(1)).findAll();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // duplicates
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("duplicates")
+    class Duplicates {
+
+        @Test
+        @DisplayName("existing users are rejected ignoring case and the check is sent in lower case")
+        void existingInDatabase() {
+            when(userRepository.findExistingUsernames(anyCollection())).thenReturn(Set.of("alice"));
+            when(userRepository.findExistingEmails(anyCollection())).thenReturn(Set.of("bob@crm.com"));
+
+            BulkImportResult result = importer.importCsv(csv(
+                    row("Alice", "alice@crm.com"), row("bob", "Bob@CRM.com")));
+
+            assertThat(result.getSuccess()).isZero();
+            assertThat(result.getErrors())
+                    .extracting(BulkImportResult.RowError::getRow, BulkImportResult.RowError::getMessage)
+                    .containsExactly(
+                            tuple(2, "Username already exists: Alice"),
+                            tuple(3, "Email already exists: Bob@CRM.com"));
+            verify(userRepository).findExistingUsernames(List.of("alice", "bob"));
+            verify(userRepository).findExistingEmails(List.of("alice@crm.com", "bob@crm.com"));
+            verifyNoInteractions(transactionTemplate);
+        }
+
+        @Test
+        @DisplayName("repeated rows inside the file are rejected ignoring case")
+        void repeatedInFile() {
+            transactionsSucceed();
+
+            BulkImportResult result = importer.importCsv(csv(
+                    row("carol", "carol@crm.com"),
+                    row("CAROL", "other@crm.com"),
+                    row("dave", "Carol@crm.com")));
+
+            assertThat(result.getTotal()).isEqualTo(3);
+            assertThat(result.getSuccess()).isEqualTo(1);
+            assertThat(result.getErrors())
+                    .extracting(BulkImportResult.RowError::getRow, BulkImportResult.RowError::getMessage)
+                    .containsExactly(
+                            tuple(3, "Username already exists: CAROL"),
+                            tuple(4, "Email already exists: Carol@crm.com"));
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // chunk failure
+    // ---------------------------------------------------------------
+    @Nested
+    @DisplayName("chunk failure")
+    class ChunkFailure {
+
+        @Test
+        @DisplayName("a failed chunk is retried row by row and only the offending row is reported")
+        void failedChunkRetriedRowByRow() {
+            List<Collection<String>> checked = new ArrayList<>();
+            when(userRepository.findExistingUsernames(anyCollection())).thenAnswer(inv -> {
+                checked.add(inv.getArgument(0));
+                return Set.of();
+            });
+            // 2: segundo bloque (filas 4-5); 3 y 4: sus reintentos fila a fila, falla la fila 5
+            doAnswer(inv -> {
+                int transaction = transactions.incrementAndGet();
+                if (transaction == 2 || transaction == 4) {
+                    throw new DataIntegrityViolationException("insert failed",
+                            new IllegalStateException("duplicate key value"));
+                }
+                inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+                return null;
+            }).when(transactionTemplate).executeWithoutResult(any());
+
+            BulkImportResult result = importer.importCsv(csv(
+                    row("u1", "u1@crm.com"), row("u2", "u2@crm.com"),
+                    row("u3", "u3@crm.com"), row("u4", "u4@crm.com"),
+                    row("u5", "u5@crm.com")));
+
+            assertThat(checked).hasSize(3);
+            assertThat(transactions).hasValue(5);
+            assertThat(result.getTotal()).isEqualTo(5);
+            assertThat(result.getSuccess()).isEqualTo(4);
+            assertThat(result.getErrors())
+                    .extracting(BulkImportResult.RowError::getRow, BulkImportResult.RowError::getMessage)
+                    .containsExactly(tuple(5, "duplicate key value"));
+        }
+
+        @Test
+        @DisplayName("values longer than their column are rejected per row before building the chunk")
+        void overlongValuesRejectedPerRow() {
+            transactionsSucceed();
+
+            BulkImportResult result = importer.importCsv(csv(
+                    row("u1", "u1@crm.com"),
+                    "u2,Nombre,Apellido,u2@crm.com," + "9".repeat(21) + ",",
+                    row("u".repeat(101), "u3@crm.com"),
+                    row("u4", "u4@crm.com")));
+
+            assertThat(result.getSuccess()).isEqualTo(2);
+            assertThat(result.getErrors())
+                    .extracting(BulkImportResult.RowError::getRow, BulkImportResult.RowError::getMessage)
+                    .containsExactly(
+                            tuple(3, "Teléfono supera los 20 caracteres"),
+                            tuple(4, "Username supera los 100 caracteres"));
+            assertThat(transactions).hasValue(1);
+        }
+    }
+}